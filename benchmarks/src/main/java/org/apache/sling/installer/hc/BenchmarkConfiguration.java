@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.lang.annotation.Annotation;
+
+/**
+ * Hand-written implementation of the component property type, used instead of a configuration admin or a mock.
+ * The fields are set by the benchmarks before the configuration is applied.
+ */
+@SuppressWarnings("all")
+final class BenchmarkConfiguration implements OsgiInstallerHealthCheckConfiguration {
+
+    static final String[] URL_PREFIXES = {
+        "jcrinstall:/apps/",
+        "jcrinstall:/libs/",
+        "launchpad:"
+    };
+
+    String[] urlPrefixes = URL_PREFIXES;
+    boolean checkBundles = true;
+    boolean checkConfigurations = true;
+    boolean allowIgnoredArtifactsInGroup = false;
+    boolean memoizeResults = false;
+    int parallelism = 0;
+
+    @Override
+    public Class<? extends Annotation> annotationType() {
+        return OsgiInstallerHealthCheckConfiguration.class;
+    }
+
+    @Override
+    public String hc_name() {
+        return OsgiInstallerHealthCheck.HC_NAME;
+    }
+
+    @Override
+    public String[] hc_tags() {
+        return new String[] {"installer", "osgi"};
+    }
+
+    @Override
+    public String[] statusOnlyTags() {
+        return new String[0];
+    }
+
+    @Override
+    public String[] urlPrefixes() {
+        return urlPrefixes.clone();
+    }
+
+    @Override
+    public String severity() {
+        return "CRITICAL";
+    }
+
+    @Override
+    public boolean checkBundles() {
+        return checkBundles;
+    }
+
+    @Override
+    public boolean checkConfigurations() {
+        return checkConfigurations;
+    }
+
+    @Override
+    public boolean allowIgnoredArtifactsInGroup() {
+        return allowIgnoredArtifactsInGroup;
+    }
+
+    @Override
+    public String[] skipEntityIds() {
+        return new String[] {"bundle:com.example.artifact1", "config:com.example.artifact2 1.0.0"};
+    }
+
+    @Override
+    public boolean eventDrivenEvaluation() {
+        return false;
+    }
+
+    @Override
+    public boolean memoizeResults() {
+        return memoizeResults;
+    }
+
+    @Override
+    public int parallelism() {
+        return parallelism;
+    }
+
+    @Override
+    public int parallelEvaluationThreshold() {
+        return 10000;
+    }
+
+    @Override
+    public int maxReportedResources() {
+        return 0;
+    }
+
+    @Override
+    public long backgroundScanIntervalInMs() {
+        return 0;
+    }
+
+    @Override
+    public long backgroundScanMaxAgeInMs() {
+        return 60000;
+    }
+
+    @Override
+    public long eventDebounceInMs() {
+        return 1000;
+    }
+
+    @Override
+    public long timeBudgetInMs() {
+        return 0;
+    }
+
+    @Override
+    public boolean verifyBundleStates() {
+        return false;
+    }
+}
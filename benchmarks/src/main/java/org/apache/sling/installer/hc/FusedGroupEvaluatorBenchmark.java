@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.installer.api.info.ResourceGroup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares evaluating several rule sets (i.e. health check configurations) in one pass with
+ * {@link FusedGroupEvaluator} to evaluating each rule set on its own.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FusedGroupEvaluatorBenchmark {
+
+    @Param({"10000", "200000"})
+    int numGroups;
+
+    @Param({"1", "4", "16"})
+    int numRuleSets;
+
+    private List<ResourceGroup> groups;
+
+    private Rules[] ruleSets;
+
+    private FusedGroupEvaluator fusedEvaluator;
+
+    @Setup
+    public void setUp() {
+        groups = SyntheticInstallationState.generate(numGroups, 0.01, 42L).getInstalledResources();
+        ruleSets = new Rules[numRuleSets];
+        for (int i = 0; i < numRuleSets; i++) {
+            final BenchmarkConfiguration configuration = new BenchmarkConfiguration();
+            // every rule set covers one of the prefixes, with different policies
+            configuration.urlPrefixes = new String[] {BenchmarkConfiguration.URL_PREFIXES[i % BenchmarkConfiguration.URL_PREFIXES.length]};
+            configuration.allowIgnoredArtifactsInGroup = i % 2 == 1;
+            configuration.checkConfigurations = i % 4 != 3;
+            ruleSets[i] = Rules.compile(configuration);
+        }
+        fusedEvaluator = FusedGroupEvaluator.compile(ruleSets);
+    }
+
+    @Benchmark
+    public List<List<GroupVerdict>> fused() {
+        return fusedEvaluator.evaluate(groups);
+    }
+
+    @Benchmark
+    public List<List<GroupVerdict>> separate() {
+        final List<List<GroupVerdict>> verdicts = new ArrayList<>(ruleSets.length);
+        for (final Rules rules : ruleSets) {
+            final List<GroupVerdict> ruleSetVerdicts = new ArrayList<>(groups.size());
+            for (final ResourceGroup group : groups) {
+                ruleSetVerdicts.add(OsgiInstallerHealthCheck.evaluateGroup(group, rules));
+            }
+            verdicts.add(ruleSetVerdicts);
+        }
+        return verdicts;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.felix.hc.api.Result;
+import org.apache.felix.hc.api.ResultLog;
+import org.apache.sling.installer.api.info.InfoProvider;
+import org.apache.sling.installer.api.info.InstallationState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures {@link OsgiInstallerHealthCheck#execute()} over synthetic installer states for every combination of the
+ * flags influencing the evaluation. Run with {@code -prof gc} to get the allocation rate as well.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OsgiInstallerHealthCheckBenchmark {
+
+    @Param({"1000", "10000", "200000"})
+    int numGroups;
+
+    @Param({"0.01"})
+    double failureRate;
+
+    @Param({"true", "false"})
+    boolean checkBundles;
+
+    @Param({"true", "false"})
+    boolean checkConfigurations;
+
+    @Param({"true", "false"})
+    boolean allowIgnoredArtifactsInGroup;
+
+    /** 0 means sequential evaluation */
+    @Param({"0"})
+    int parallelism;
+
+    /** the state never changes between executions, so with memoization every execution but the first is a hit */
+    @Param({"false"})
+    boolean memoizeResults;
+
+    private OsgiInstallerHealthCheck healthCheck;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        final InstallationState installationState = SyntheticInstallationState.generate(numGroups, failureRate, 42L);
+        final BenchmarkConfiguration configuration = new BenchmarkConfiguration();
+        configuration.checkBundles = checkBundles;
+        configuration.checkConfigurations = checkConfigurations;
+        configuration.allowIgnoredArtifactsInGroup = allowIgnoredArtifactsInGroup;
+        configuration.parallelism = parallelism;
+        configuration.memoizeResults = memoizeResults;
+        healthCheck = createHealthCheck(() -> installationState, configuration);
+    }
+
+    @TearDown
+    public void tearDown() {
+        healthCheck.deactivate();
+    }
+
+    static OsgiInstallerHealthCheck createHealthCheck(InfoProvider infoProvider, OsgiInstallerHealthCheckConfiguration configuration) throws ReflectiveOperationException {
+        final OsgiInstallerHealthCheck healthCheck = new OsgiInstallerHealthCheck();
+        final Field field = OsgiInstallerHealthCheck.class.getDeclaredField("infoProvider");
+        field.setAccessible(true);
+        field.set(healthCheck, infoProvider);
+        healthCheck.configure(configuration);
+        return healthCheck;
+    }
+
+    @Benchmark
+    public Result execute() {
+        return healthCheck.execute();
+    }
+
+    /**
+     * Like a status-only probe, never requests the result's entries.
+     */
+    @Benchmark
+    public Result.Status executeStatusOnly() {
+        return healthCheck.execute().getStatus();
+    }
+
+    /**
+     * Like a readiness probe using the dedicated status-only health check.
+     */
+    @Benchmark
+    public Result.Status executeStatusOnlyFastPath() {
+        return healthCheck.executeStatusOnly().getStatus();
+    }
+
+    /**
+     * Like the health check servlet, requests all messages of the result.
+     */
+    @Benchmark
+    public void executeAndRenderMessages(Blackhole blackhole) {
+        for (ResultLog.Entry entry : healthCheck.execute()) {
+            blackhole.consume(entry.getMessage());
+        }
+    }
+}
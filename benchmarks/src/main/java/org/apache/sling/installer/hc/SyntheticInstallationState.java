@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.sling.installer.api.InstallableResource;
+import org.apache.sling.installer.api.info.InstallationState;
+import org.apache.sling.installer.api.info.Resource;
+import org.apache.sling.installer.api.info.ResourceGroup;
+import org.apache.sling.installer.api.tasks.RegisteredResource;
+import org.apache.sling.installer.api.tasks.ResourceState;
+import org.osgi.framework.Version;
+
+/**
+ * Generates installer states resembling the ones of real instances: most groups contain a single resource, some
+ * contain a few versions and very few contain many versions of the same artifact. The resources are spread across
+ * several URL prefixes (only some of which are covered by {@link BenchmarkConfiguration#URL_PREFIXES}) and are
+ * mostly, but not all, installed.
+ */
+final class SyntheticInstallationState implements InstallationState {
+
+    private static final String[] URL_PREFIXES = {
+        "jcrinstall:/apps/",
+        "jcrinstall:/libs/",
+        "launchpad:resources/install/",
+        "jcrinstall:/apps/tenant1/",
+        "jcrinstall:/apps/tenant2/",
+        "jcrinstall:/conf/"
+    };
+
+    private final List<ResourceGroup> installedResources;
+
+    private SyntheticInstallationState(List<ResourceGroup> installedResources) {
+        this.installedResources = Collections.unmodifiableList(installedResources);
+    }
+
+    /**
+     * @param numGroups the number of resource groups to generate
+     * @param failureRate the probability with which a resource is not installed (between 0 and 1)
+     * @param seed the seed for the random generator, the same seed always leads to the same state
+     * @return the generated state
+     */
+    static SyntheticInstallationState generate(int numGroups, double failureRate, long seed) {
+        final Random random = new Random(seed);
+        final List<ResourceGroup> groups = new ArrayList<>(numGroups);
+        for (int i = 0; i < numGroups; i++) {
+            final boolean isBundle = random.nextInt(100) < 60;
+            final String type = isBundle ? InstallableResource.TYPE_BUNDLE : InstallableResource.TYPE_CONFIG;
+            final String name = "com.example.artifact" + i;
+            final String entityId = (isBundle ? "bundle:" : "config:") + name;
+            final int percentile = random.nextInt(100);
+            final int numResources;
+            if (percentile < 90) {
+                numResources = 1;
+            } else if (percentile < 99) {
+                numResources = 2 + random.nextInt(3);
+            } else {
+                numResources = 10 + random.nextInt(41);
+            }
+            final List<Resource> resources = new ArrayList<>(numResources);
+            for (int j = 0; j < numResources; j++) {
+                final String prefix = URL_PREFIXES[random.nextInt(URL_PREFIXES.length)];
+                final Version version = new Version(1, j, random.nextInt(10));
+                final String url = prefix + (isBundle ? "install/" + name + "-" + version + ".jar" : "config/" + name + ".cfg.json");
+                final ResourceState state;
+                if (random.nextDouble() < failureRate) {
+                    state = random.nextBoolean() ? ResourceState.IGNORED : ResourceState.INSTALL;
+                } else {
+                    state = j == 0 ? ResourceState.INSTALLED : ResourceState.UNINSTALLED;
+                }
+                resources.add(new SyntheticResource(type, url, entityId, version, state));
+            }
+            groups.add(new SyntheticResourceGroup(resources));
+        }
+        return new SyntheticInstallationState(groups);
+    }
+
+    @Override
+    public List<ResourceGroup> getActiveResources() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<ResourceGroup> getInstalledResources() {
+        return installedResources;
+    }
+
+    @Override
+    public List<RegisteredResource> getUntransformedResources() {
+        return Collections.emptyList();
+    }
+}
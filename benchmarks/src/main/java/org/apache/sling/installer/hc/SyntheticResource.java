@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.io.InputStream;
+import java.util.Dictionary;
+
+import org.apache.sling.installer.api.info.Resource;
+import org.apache.sling.installer.api.tasks.ResourceState;
+import org.osgi.framework.Version;
+
+/**
+ * Plain {@link Resource} implementation which is cheap to call, so that the benchmarks measure the health check and
+ * not a mocking framework.
+ */
+final class SyntheticResource implements Resource {
+
+    private final String type;
+    private final String url;
+    private final String entityId;
+    private final String digest;
+    private final Version version;
+    private final ResourceState state;
+
+    SyntheticResource(String type, String url, String entityId, Version version, ResourceState state) {
+        this.type = type;
+        this.url = url;
+        this.entityId = entityId;
+        this.version = version;
+        this.state = state;
+        this.digest = Integer.toHexString((url + version).hashCode());
+    }
+
+    @Override
+    public String getScheme() {
+        return url.substring(0, url.indexOf(':'));
+    }
+
+    @Override
+    public String getURL() {
+        return url;
+    }
+
+    @Override
+    public String getType() {
+        return type;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return null;
+    }
+
+    @Override
+    public Dictionary<String, Object> getDictionary() {
+        return null;
+    }
+
+    @Override
+    public String getDigest() {
+        return digest;
+    }
+
+    @Override
+    public int getPriority() {
+        return 100;
+    }
+
+    @Override
+    public String getEntityId() {
+        return entityId;
+    }
+
+    @Override
+    public ResourceState getState() {
+        return state;
+    }
+
+    @Override
+    public Version getVersion() {
+        return version;
+    }
+
+    @Override
+    public long getLastChange() {
+        return 0;
+    }
+
+    @Override
+    public Object getAttribute(String key) {
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "SyntheticResource [url=" + url + ", entityId=" + entityId + ", state=" + state + ", version=" + version + "]";
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures the bytes allocated by the current thread via {@code com.sun.management.ThreadMXBean}.
+ * That interface is not part of the Java SE API, therefore it is only used if available and enabled, otherwise all
+ * measurements return -1.
+ */
+final class AllocationMeter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AllocationMeter.class);
+
+    /** {@code null} in case measuring allocations is not supported */
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN = lookupThreadMXBean();
+
+    private AllocationMeter() {
+    }
+
+    private static com.sun.management.ThreadMXBean lookupThreadMXBean() {
+        try {
+            ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+            if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean sunThreadMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+                if (sunThreadMXBean.isThreadAllocatedMemorySupported() && sunThreadMXBean.isThreadAllocatedMemoryEnabled()) {
+                    return sunThreadMXBean;
+                }
+            }
+        } catch (LinkageError | RuntimeException e) {
+            LOG.debug("Cannot measure allocations per thread", e);
+        }
+        LOG.debug("Measuring allocations per thread is not supported by this JVM");
+        return null;
+    }
+
+    /**
+     * @return the number of bytes allocated by the current thread since its start or -1 if not supported
+     */
+    static long getAllocatedBytes() {
+        if (THREAD_MX_BEAN == null) {
+            return -1;
+        }
+        return THREAD_MX_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import org.apache.felix.hc.api.FormattingResultLog;
+import org.apache.felix.hc.api.Result;
+import org.apache.felix.hc.api.ResultLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Evaluates the installer state periodically on a dedicated thread and keeps the latest result, so that health check
+ * executions only need to return that result in constant time.
+ */
+final class BackgroundScanner {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BackgroundScanner.class);
+
+    private final long intervalMs;
+
+    private final Supplier<Result> scan;
+
+    private final ScheduledExecutorService executor;
+
+    /** the time source for the age of the latest result */
+    private final LongSupplier nanoClock;
+
+    private volatile CompletedScan latestScan;
+
+    /**
+     * Starts scanning right away.
+     *
+     * @param intervalMs the interval between the end of a scan and the start of the next one in milliseconds
+     * @param scan the actual scan
+     * @param executor the executor running the scans, usually {@link #newExecutor()}, shut down together with this scanner
+     * @param nanoClock the time source in nanoseconds, usually {@link System#nanoTime()}
+     */
+    BackgroundScanner(long intervalMs, Supplier<Result> scan, ScheduledExecutorService executor, LongSupplier nanoClock) {
+        this.intervalMs = intervalMs;
+        this.scan = scan;
+        this.executor = executor;
+        this.nanoClock = nanoClock;
+        executor.scheduleWithFixedDelay(this::runScan, 0, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return a new executor with a single daemon thread
+     */
+    static ScheduledExecutorService newExecutor() {
+        final ThreadFactory defaultThreadFactory = Executors.defaultThreadFactory();
+        return Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = defaultThreadFactory.newThread(runnable);
+            thread.setName("sling-installer-hc-background-scan");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    long getIntervalMs() {
+        return intervalMs;
+    }
+
+    /**
+     * Triggers an additional scan right away (e.g. because the rules have changed).
+     */
+    void requestScan() {
+        try {
+            executor.execute(this::runScan);
+        } catch (RejectedExecutionException e) {
+            LOG.debug("Background scanner has already been shut down", e);
+        }
+    }
+
+    /**
+     * Triggers an additional scan after the given delay.
+     *
+     * @param delayMs the delay in milliseconds
+     */
+    void requestScan(long delayMs) {
+        try {
+            executor.schedule(this::runScan, delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            LOG.debug("Background scanner has already been shut down", e);
+        }
+    }
+
+    /**
+     * Interrupts a running scan and does not start any further scans.
+     */
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    void runScan() {
+        try {
+            final Result result = scan.get();
+            latestScan = new CompletedScan(result, nanoClock.getAsLong());
+        } catch (CancellationException e) {
+            LOG.debug("Background scan of the installer state has been interrupted", e);
+        } catch (RuntimeException e) {
+            // must not be propagated, as that would suppress all subsequent scans
+            LOG.warn("Background scan of the installer state failed", e);
+        }
+    }
+
+    /**
+     * @param maxAgeMs the maximum age of the latest result in milliseconds, 0 means no limit
+     * @return the latest result, with status WARN (or worse) in case it is older than the given maximum age and with
+     *         status TEMPORARILY_UNAVAILABLE in case no scan has completed yet
+     */
+    Result getLatestResult(long maxAgeMs) {
+        final CompletedScan scan = latestScan;
+        if (scan == null) {
+            return new Result(Result.Status.TEMPORARILY_UNAVAILABLE, "No background scan of the installer state has completed yet.");
+        }
+        final long ageMs = TimeUnit.NANOSECONDS.toMillis(nanoClock.getAsLong() - scan.completedAt);
+        if (maxAgeMs <= 0 || ageMs <= maxAgeMs) {
+            return scan.result;
+        }
+        final Result.Status status = scan.result.getStatus().ordinal() > Result.Status.WARN.ordinal() ? scan.result.getStatus() : Result.Status.WARN;
+        return new LazyResult(status, () -> {
+            final FormattingResultLog hcLog = new FormattingResultLog();
+            for (ResultLog.Entry entry : scan.result) {
+                hcLog.add(entry);
+            }
+            hcLog.warn("The result of the last background scan is {} ms old, which exceeds the maximum age of {} ms. The background scan might be stuck.", ageMs, maxAgeMs);
+            return hcLog;
+        });
+    }
+
+    private static final class CompletedScan {
+        private final Result result;
+        private final long completedAt;
+
+        CompletedScan(Result result, long completedAt) {
+            this.result = result;
+            this.completedAt = completedAt;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.apache.felix.hc.api.FormattingResultLog;
+import org.apache.felix.hc.api.Result;
+import org.apache.felix.hc.api.ResultLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Evaluates groups until the time budget is exhausted. The pass is continued by the next execution, only a complete
+ * pass leads to a new verdict. A pass is discarded after an installer event, as its groups might no longer reflect the
+ * installer state.
+ */
+final class BudgetedEvaluation implements EvaluationStrategy {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BudgetedEvaluation.class);
+
+    private final Rules rules;
+
+    private final Context context;
+
+    /** the time source the time budget refers to */
+    private final LongSupplier nanoClock;
+
+    /** the pass which is continued by the next execution */
+    private volatile ResumableScan resumableScan;
+
+    /** the result of the last complete pass */
+    private volatile CachedResult budgetedResult;
+
+    /** the verdicts of the last complete pass, only set in case results are memoized */
+    private volatile VerdictCache verdictCache = VerdictCache.EMPTY;
+
+    /**
+     * @param rules the rules to apply, with a time budget
+     * @param context the access to the installer state
+     * @param nanoClock the time source, usually {@link System#nanoTime()}
+     */
+    BudgetedEvaluation(Rules rules, Context context, LongSupplier nanoClock) {
+        this.rules = rules;
+        this.context = context;
+        this.nanoClock = nanoClock;
+    }
+
+    @Override
+    public Rules getRules() {
+        return rules;
+    }
+
+    @Override
+    public CachedResult evaluate(ExecutionSample sample) {
+        final long deadline = nanoClock.getAsLong() + TimeUnit.MILLISECONDS.toNanos(rules.getTimeBudgetMs());
+        ResumableScan scan = resumableScan;
+        final long epoch = context.getInstallerEpoch();
+        if (scan == null || scan.getInstallerEpoch() != epoch) {
+            // read the epoch before retrieving the state, so that concurrent events lead to another pass
+            scan = new ResumableScan(rules, epoch, context.retrieveInstalledResources(sample), nanoClock);
+            resumableScan = scan;
+        }
+        sample.evaluated(scan.advance(deadline, verdictCache));
+        if (!scan.isComplete()) {
+            LOG.debug("Time budget exhausted after {} of {} groups, continuing with the next execution", scan.getCursor(), scan.getGroups().size());
+            return new CachedResult(rules, 0, Collections.emptyList(), buildPartialResult(scan), scan.getGroups());
+        }
+        resumableScan = null;
+        if (rules.isMemoizeResults()) {
+            verdictCache = VerdictCache.of(rules, scan.getGroups(), scan.getGroupFingerprints(), scan.getVerdicts());
+        }
+        final CachedResult evaluation = new CachedResult(rules, 0, scan.getVerdicts(), OsgiInstallerHealthCheck.buildResult(scan.getVerdicts(), rules), scan.getGroups());
+        budgetedResult = evaluation;
+        return evaluation;
+    }
+
+    /**
+     * @param scan
+     *            the incomplete pass
+     * @return the result of the last complete pass (if there is one) together with the progress of the current pass
+     */
+    private Result buildPartialResult(ResumableScan scan) {
+        final CachedResult previous = budgetedResult;
+        final Result previousResult = previous != null ? previous.getResult() : null;
+        final int numEvaluatedGroups = scan.getCursor();
+        final int numGroups = scan.getGroups().size();
+        final long timeBudgetMs = rules.getTimeBudgetMs();
+        final Result.Status status = previousResult != null ? previousResult.getStatus() : Result.Status.TEMPORARILY_UNAVAILABLE;
+        return new LazyResult(status, () -> {
+            FormattingResultLog hcLog = new FormattingResultLog();
+            if (previousResult != null) {
+                for (final ResultLog.Entry entry : previousResult) {
+                    hcLog.add(entry);
+                }
+                hcLog.info("Partial evaluation: {} of {} groups have been evaluated again within the time budget of {} ms, the result above is the one of the last complete evaluation.",
+                        numEvaluatedGroups, numGroups, timeBudgetMs);
+            } else {
+                hcLog.temporarilyUnavailable("Partial evaluation: {} of {} groups have been evaluated within the time budget of {} ms, the evaluation continues with the next execution.",
+                        numEvaluatedGroups, numGroups, timeBudgetMs);
+            }
+            return hcLog;
+        });
+    }
+}
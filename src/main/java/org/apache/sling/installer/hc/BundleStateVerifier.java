@@ -0,0 +1,380 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.felix.hc.api.FormattingResultLog;
+import org.apache.felix.hc.api.Result;
+import org.apache.felix.hc.api.ResultLog;
+import org.apache.sling.installer.api.InstallableResource;
+import org.apache.sling.installer.api.info.Resource;
+import org.apache.sling.installer.api.info.ResourceGroup;
+import org.apache.sling.installer.api.tasks.ResourceState;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.Constants;
+import org.osgi.framework.Version;
+import org.osgi.framework.startlevel.BundleStartLevel;
+import org.osgi.framework.startlevel.FrameworkStartLevel;
+import org.osgi.util.tracker.BundleTracker;
+import org.osgi.util.tracker.BundleTrackerCustomizer;
+
+/**
+ * Cross-checks the bundles which are installed according to the OSGi installer against the framework: the installer
+ * state of a bundle might still be INSTALLED although the bundle is only resolved or has been uninstalled manually.
+ * <p>
+ * The bundles of the framework are indexed by symbolic name and version. The index is maintained by a
+ * {@link BundleTracker}, i.e. it is updated incrementally with every bundle event instead of retrieving all bundles on
+ * every execution, and looking up the bundle of a resource takes constant time. The outcome of the last verification
+ * is reused as long as neither the installer state, nor any bundle, nor the framework start level has changed.
+ * <p>
+ * Bundles which are not started on purpose are not reported: bundles whose start level has not been reached yet and
+ * bundles which are not persistently started (e.g. as they have been stopped on purpose or the installer has been
+ * told not to start them).
+ */
+final class BundleStateVerifier implements BundleTrackerCustomizer<BundleStateVerifier.TrackedBundle> {
+
+    private static final int TRACKED_STATES = Bundle.INSTALLED | Bundle.RESOLVED | Bundle.STARTING | Bundle.ACTIVE | Bundle.STOPPING;
+
+    private final BundleContext bundleContext;
+
+    private final BundleTracker<TrackedBundle> tracker;
+
+    /** the tracked bundles by symbolic name, usually there is only one version per symbolic name */
+    private final ConcurrentMap<String, TrackedBundle[]> bundlesBySymbolicName = new ConcurrentHashMap<>();
+
+    /** incremented on every change of a tracked bundle */
+    private final AtomicLong generation = new AtomicLong();
+
+    private volatile Verification lastVerification;
+
+    BundleStateVerifier(BundleContext bundleContext) {
+        this.bundleContext = bundleContext;
+        tracker = new BundleTracker<>(bundleContext, TRACKED_STATES, this);
+    }
+
+    void open() {
+        tracker.open();
+    }
+
+    void close() {
+        tracker.close();
+    }
+
+    @Override
+    public TrackedBundle addingBundle(Bundle bundle, BundleEvent event) {
+        final TrackedBundle trackedBundle = new TrackedBundle(bundle);
+        index(trackedBundle);
+        return trackedBundle;
+    }
+
+    @Override
+    public void modifiedBundle(Bundle bundle, BundleEvent event, TrackedBundle trackedBundle) {
+        if (!trackedBundle.isUpToDate()) {
+            // an update might have changed symbolic name and version
+            unindex(trackedBundle);
+            trackedBundle.refresh();
+            index(trackedBundle);
+        } else {
+            generation.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void removedBundle(Bundle bundle, BundleEvent event, TrackedBundle trackedBundle) {
+        unindex(trackedBundle);
+    }
+
+    private void index(TrackedBundle trackedBundle) {
+        if (trackedBundle.symbolicName != null) {
+            bundlesBySymbolicName.merge(trackedBundle.symbolicName, new TrackedBundle[]{trackedBundle}, (existing, added) -> {
+                final TrackedBundle[] merged = new TrackedBundle[existing.length + 1];
+                System.arraycopy(existing, 0, merged, 0, existing.length);
+                merged[existing.length] = trackedBundle;
+                return merged;
+            });
+        }
+        generation.incrementAndGet();
+    }
+
+    private void unindex(TrackedBundle trackedBundle) {
+        if (trackedBundle.symbolicName != null) {
+            bundlesBySymbolicName.computeIfPresent(trackedBundle.symbolicName, (symbolicName, existing) -> {
+                final List<TrackedBundle> remaining = new ArrayList<>(existing.length);
+                for (final TrackedBundle candidate : existing) {
+                    if (candidate != trackedBundle) {
+                        remaining.add(candidate);
+                    }
+                }
+                return remaining.isEmpty() ? null : remaining.toArray(new TrackedBundle[0]);
+            });
+        }
+        generation.incrementAndGet();
+    }
+
+    /**
+     * @param resource a bundle resource
+     * @return the state of the corresponding bundle in the framework or {@link Bundle#UNINSTALLED} in case there is
+     *         no such bundle
+     */
+    int getFrameworkState(Resource resource) {
+        final TrackedBundle trackedBundle = find(resource);
+        return trackedBundle != null ? trackedBundle.bundle.getState() : Bundle.UNINSTALLED;
+    }
+
+    private TrackedBundle find(Resource resource) {
+        final TrackedBundle[] candidates = bundlesBySymbolicName.get(getSymbolicName(resource));
+        if (candidates == null) {
+            return null;
+        }
+        final Version version = resource.getVersion();
+        for (final TrackedBundle candidate : candidates) {
+            if (version == null || version.equals(candidate.version)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private static String getSymbolicName(Resource resource) {
+        final Object symbolicName = resource.getAttribute(Constants.BUNDLE_SYMBOLICNAME);
+        if (symbolicName instanceof String) {
+            return (String) symbolicName;
+        }
+        final String entityId = resource.getEntityId();
+        final String prefix = InstallableResource.TYPE_BUNDLE + ":";
+        return entityId != null && entityId.startsWith(prefix) ? entityId.substring(prefix.length()) : entityId;
+    }
+
+    /**
+     * Adds the bundles which are installed according to the installer but not active in the framework to the given
+     * result. Nothing is verified again in case neither the result (i.e. it has been reused as the installer state did
+     * not change) nor any bundle has changed since the last call.
+     *
+     * @param result the result of the health check
+     * @param groups the installed resource groups the result has been calculated from
+     * @param rules the rules to apply
+     * @return the given result in case all bundles are fine, otherwise a result containing the additional findings
+     */
+    Result verify(Result result, List<ResourceGroup> groups, Rules rules) {
+        // read before the verification, so that changes during the verification lead to another one next time
+        final long currentGeneration = generation.get();
+        // changes of the framework start level are not signalled by bundle events in case no bundle is started
+        final int frameworkStartLevel = getFrameworkStartLevel();
+        final Verification previous = lastVerification;
+        List<Mismatch> mismatches = null;
+        if (previous != null && previous.rules == rules && previous.generation == currentGeneration && previous.frameworkStartLevel == frameworkStartLevel) {
+            if (previous.result == result) {
+                return previous.verifiedResult;
+            }
+            if (previous.groups == groups) {
+                mismatches = previous.mismatches;
+            }
+        }
+        if (mismatches == null) {
+            mismatches = getMismatches(groups, rules, frameworkStartLevel);
+        }
+        final Result verifiedResult = mismatches.isEmpty() ? result : addMismatches(result, mismatches, rules);
+        lastVerification = new Verification(groups, rules, currentGeneration, frameworkStartLevel, result, mismatches, verifiedResult);
+        return verifiedResult;
+    }
+
+    /**
+     * @return the current start level of the framework or {@link Integer#MAX_VALUE} in case it is not available
+     */
+    private int getFrameworkStartLevel() {
+        final Bundle systemBundle = bundleContext.getBundle(Constants.SYSTEM_BUNDLE_LOCATION);
+        final FrameworkStartLevel startLevel = systemBundle != null ? systemBundle.adapt(FrameworkStartLevel.class) : null;
+        return startLevel != null ? startLevel.getStartLevel() : Integer.MAX_VALUE;
+    }
+
+    private static Result addMismatches(Result result, List<Mismatch> mismatches, Rules rules) {
+        final Result.Status severity = rules.getSeverity();
+        final Result.Status status = result.getStatus().ordinal() >= severity.ordinal() ? result.getStatus() : severity;
+        final int maxReportedResources = rules.getMaxReportedResources();
+        return new LazyResult(status, () -> {
+            final FormattingResultLog hcLog = new FormattingResultLog();
+            for (final ResultLog.Entry entry : result) {
+                hcLog.add(entry);
+            }
+            final int numReported = maxReportedResources == 0 ? mismatches.size() : Math.min(maxReportedResources, mismatches.size());
+            for (final Mismatch mismatch : mismatches.subList(0, numReported)) {
+                Finding.report(hcLog, severity, "The OSGi bundle resource '{}' is installed according to the OSGi installer, but the bundle is {} in the framework!",
+                        mismatch.resource, getStateLabel(mismatch.frameworkState));
+            }
+            if (numReported < mismatches.size()) {
+                Finding.report(hcLog, severity, "{} more bundles are installed according to the OSGi installer but not active in the framework.",
+                        mismatches.size() - numReported);
+            }
+            return hcLog;
+        });
+    }
+
+    /**
+     * @param groups the installed resource groups
+     * @param rules the rules to apply
+     * @param frameworkStartLevel the current start level of the framework
+     * @return the bundles which are installed according to the installer but not active in the framework
+     */
+    private List<Mismatch> getMismatches(List<ResourceGroup> groups, Rules rules, int frameworkStartLevel) {
+        List<Mismatch> mismatches = Collections.emptyList();
+        if (rules.isCheckBundles()) {
+            for (final ResourceGroup group : groups) {
+                OsgiInstallerHealthCheck.checkInterrupted();
+                for (final Resource resource : group.getResources()) {
+                    if (!isInstalledBundle(resource, rules)) {
+                        continue;
+                    }
+                    final TrackedBundle trackedBundle = find(resource);
+                    final int frameworkState = trackedBundle != null ? trackedBundle.bundle.getState() : Bundle.UNINSTALLED;
+                    if (trackedBundle == null || !trackedBundle.isExpectedState(frameworkState, frameworkStartLevel)) {
+                        if (mismatches.isEmpty()) {
+                            mismatches = new ArrayList<>();
+                        }
+                        mismatches.add(new Mismatch(resource, frameworkState));
+                    }
+                }
+            }
+        }
+        return mismatches;
+    }
+
+    private static boolean isInstalledBundle(Resource resource, Rules rules) {
+        return InstallableResource.TYPE_BUNDLE.equals(resource.getType())
+                && resource.getState() == ResourceState.INSTALLED
+                && rules.getUrlPrefixMatcher().matches(resource.getURL())
+                && !rules.getSkipList().isSkipped(resource.getEntityId(), resource.getVersion());
+    }
+
+    private static String getStateLabel(int state) {
+        switch (state) {
+        case Bundle.INSTALLED:
+            return "only installed (not resolved)";
+        case Bundle.RESOLVED:
+            return "only resolved (not started)";
+        case Bundle.STARTING:
+            return "starting";
+        case Bundle.STOPPING:
+            return "stopping";
+        case Bundle.ACTIVE:
+            return "active";
+        default:
+            return "not installed (probably uninstalled manually)";
+        }
+    }
+
+    /**
+     * A bundle of the framework together with the headers relevant for the expected state.
+     */
+    static final class TrackedBundle {
+        private final Bundle bundle;
+        private volatile String symbolicName;
+        private volatile Version version;
+        private volatile boolean fragment;
+        private volatile boolean lazyActivation;
+
+        TrackedBundle(Bundle bundle) {
+            this.bundle = bundle;
+            refresh();
+        }
+
+        void refresh() {
+            symbolicName = bundle.getSymbolicName();
+            version = bundle.getVersion();
+            final Dictionary<String, String> headers = bundle.getHeaders("");
+            fragment = headers != null && headers.get(Constants.FRAGMENT_HOST) != null;
+            final String activationPolicy = headers != null ? headers.get(Constants.BUNDLE_ACTIVATIONPOLICY) : null;
+            lazyActivation = activationPolicy != null && activationPolicy.trim().startsWith(Constants.ACTIVATION_LAZY);
+        }
+
+        boolean isUpToDate() {
+            final String currentSymbolicName = bundle.getSymbolicName();
+            final Version currentVersion = bundle.getVersion();
+            return (currentSymbolicName == null ? symbolicName == null : currentSymbolicName.equals(symbolicName))
+                    && (currentVersion == null ? version == null : currentVersion.equals(version));
+        }
+
+        /**
+         * @param state the current state of the bundle
+         * @param frameworkStartLevel the current start level of the framework
+         * @return {@code true} in case the bundle is active, resolved in case of a fragment or starting in case of lazy
+         *         activation, or not started on purpose
+         */
+        boolean isExpectedState(int state, int frameworkStartLevel) {
+            if (state == Bundle.ACTIVE
+                    || (fragment && state == Bundle.RESOLVED)
+                    || (lazyActivation && state == Bundle.STARTING)) {
+                return true;
+            }
+            if (state != Bundle.INSTALLED && state != Bundle.RESOLVED) {
+                return false;
+            }
+            // only looked up for the few bundles which are not active
+            final BundleStartLevel startLevel = bundle.adapt(BundleStartLevel.class);
+            if (startLevel == null) {
+                return false;
+            }
+            if (startLevel.getStartLevel() > frameworkStartLevel) {
+                // not started (and possibly not resolved) yet
+                return true;
+            }
+            return state == Bundle.RESOLVED && !startLevel.isPersistentlyStarted();
+        }
+    }
+
+    /**
+     * A bundle which is installed according to the installer but not active in the framework.
+     */
+    static final class Mismatch {
+        private final Resource resource;
+        private final int frameworkState;
+
+        Mismatch(Resource resource, int frameworkState) {
+            this.resource = resource;
+            this.frameworkState = frameworkState;
+        }
+    }
+
+    private static final class Verification {
+        private final List<ResourceGroup> groups;
+        private final Rules rules;
+        private final long generation;
+        private final int frameworkStartLevel;
+        private final Result result;
+        private final List<Mismatch> mismatches;
+        private final Result verifiedResult;
+
+        Verification(List<ResourceGroup> groups, Rules rules, long generation, int frameworkStartLevel, Result result, List<Mismatch> mismatches, Result verifiedResult) {
+            this.groups = groups;
+            this.rules = rules;
+            this.generation = generation;
+            this.frameworkStartLevel = frameworkStartLevel;
+            this.result = result;
+            this.mismatches = mismatches;
+            this.verifiedResult = verifiedResult;
+        }
+    }
+}
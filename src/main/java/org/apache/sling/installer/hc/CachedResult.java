@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.util.List;
+
+import org.apache.felix.hc.api.Result;
+import org.apache.sling.installer.api.info.ResourceGroup;
+import org.apache.sling.installer.api.tasks.ResourceState;
+
+/**
+ * The result of an evaluation together with the verdicts and groups it has been calculated from. The numbers of
+ * reported resources are counted once, so that reusing the result does not need to go through the verdicts again.
+ */
+final class CachedResult {
+
+    private final long fingerprint;
+    private final List<GroupVerdict> verdicts;
+    private final Result result;
+    /** the groups the verdicts have been calculated for */
+    private final List<ResourceGroup> groups;
+    private final long resourcesSkipped;
+    private final long resourcesFailing;
+    private final long resourcesIgnored;
+    /** {@code false} in case any of the verdicts must be calculated again on every execution */
+    private final boolean reusable;
+
+    /**
+     * @param rules the rules the verdicts have been calculated with
+     * @param fingerprint the fingerprint of the installer state, 0 if not calculated
+     * @param verdicts the verdicts in the order of the groups
+     * @param result the result built from the verdicts
+     * @param groups the evaluated groups
+     */
+    CachedResult(Rules rules, long fingerprint, List<GroupVerdict> verdicts, Result result, List<ResourceGroup> groups) {
+        this.fingerprint = fingerprint;
+        this.verdicts = verdicts;
+        this.result = result;
+        this.groups = groups;
+        long numSkipped = 0;
+        long numFailing = 0;
+        long numIgnored = 0;
+        boolean allReusable = true;
+        for (final GroupVerdict verdict : verdicts) {
+            allReusable &= rules.isReusable(verdict);
+            numSkipped += verdict.getNumSkippedResources();
+            for (final Finding finding : verdict.getFindings()) {
+                numFailing++;
+                if (finding.getState() == ResourceState.IGNORED) {
+                    numIgnored++;
+                }
+            }
+        }
+        resourcesSkipped = numSkipped;
+        resourcesFailing = numFailing;
+        resourcesIgnored = numIgnored;
+        reusable = allReusable;
+    }
+
+    long getFingerprint() {
+        return fingerprint;
+    }
+
+    List<GroupVerdict> getVerdicts() {
+        return verdicts;
+    }
+
+    Result getResult() {
+        return result;
+    }
+
+    List<ResourceGroup> getGroups() {
+        return groups;
+    }
+
+    long getResourcesSkipped() {
+        return resourcesSkipped;
+    }
+
+    long getResourcesFailing() {
+        return resourcesFailing;
+    }
+
+    long getResourcesIgnored() {
+        return resourcesIgnored;
+    }
+
+    /**
+     * @return {@code false} in case any of the verdicts must be calculated again on every execution (see
+     *         {@link Rules#isReusable(GroupVerdict)})
+     */
+    boolean isReusable() {
+        return reusable;
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.apache.felix.hc.api.Result;
+import org.apache.sling.installer.api.event.InstallationEvent;
+import org.apache.sling.installer.api.info.InstallationState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Completes futures once the OSGi installer has converged.
+ * Checks are only done on request and whenever the installer signals that it has finished processing (via a
+ * {@code SUSPENDED} event), on a dedicated thread which is only started once the first caller waits for convergence.
+ * The installer state is considered converged if there are no active resources and no installer event has been
+ * received while the health check was evaluated.
+ */
+final class ConvergenceTracker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConvergenceTracker.class);
+
+    private final Supplier<InstallationState> installationStateSupplier;
+
+    private final Supplier<Result> evaluation;
+
+    private final AtomicLong numEvents = new AtomicLong();
+
+    /** set while a check has been submitted which did not start yet */
+    private final AtomicBoolean checkPending = new AtomicBoolean();
+
+    /** the future shared by all callers waiting for the current convergence, guarded by this */
+    private CompletableFuture<Result> convergence;
+
+    /** lazily created, guarded by this */
+    private ExecutorService executor;
+
+    /** guarded by this */
+    private boolean closed;
+
+    /**
+     * @param installationStateSupplier provides the current installer state
+     * @param evaluation evaluates the health check
+     */
+    ConvergenceTracker(Supplier<InstallationState> installationStateSupplier, Supplier<Result> evaluation) {
+        this.installationStateSupplier = installationStateSupplier;
+        this.evaluation = evaluation;
+    }
+
+    /**
+     * @return a future completed once the installer has converged
+     */
+    CompletableFuture<Result> converged() {
+        final CompletableFuture<Result> future;
+        synchronized (this) {
+            if (closed) {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(new CancellationException("The health check has been deactivated"));
+                return future;
+            }
+            if (convergence == null || convergence.isDone()) {
+                convergence = new CompletableFuture<>();
+            }
+            future = convergence;
+        }
+        requestCheck();
+        // a dependent future, so that a caller cancelling it does not cancel it for all others
+        return future.thenApply(Function.identity());
+    }
+
+    void onEvent(InstallationEvent event) {
+        numEvents.incrementAndGet();
+        if (event.getType() == InstallationEvent.TYPE.SUSPENDED && isWaiting()) {
+            requestCheck();
+        }
+    }
+
+    /**
+     * Completes all pending futures exceptionally and stops the checking thread.
+     */
+    void close() {
+        final CompletableFuture<Result> pending;
+        synchronized (this) {
+            closed = true;
+            pending = convergence;
+            convergence = null;
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
+            }
+        }
+        if (pending != null) {
+            pending.completeExceptionally(new CancellationException("The health check has been deactivated"));
+        }
+    }
+
+    private synchronized boolean isWaiting() {
+        return convergence != null && !convergence.isDone();
+    }
+
+    private void requestCheck() {
+        if (!checkPending.compareAndSet(false, true)) {
+            // the pending check will see the latest state
+            return;
+        }
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            if (executor == null) {
+                final ThreadFactory defaultThreadFactory = Executors.defaultThreadFactory();
+                executor = Executors.newSingleThreadExecutor(runnable -> {
+                    Thread thread = defaultThreadFactory.newThread(runnable);
+                    thread.setName("sling-installer-hc-convergence");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            try {
+                executor.execute(this::check);
+            } catch (RejectedExecutionException e) {
+                LOG.debug("Convergence tracker has already been closed", e);
+            }
+        }
+    }
+
+    private void check() {
+        checkPending.set(false);
+        final CompletableFuture<Result> future;
+        synchronized (this) {
+            future = convergence;
+        }
+        if (future == null || future.isDone()) {
+            return;
+        }
+        try {
+            final long numEventsBefore = numEvents.get();
+            if (!installationStateSupplier.get().getActiveResources().isEmpty()) {
+                LOG.debug("Installer has not converged yet, waiting for it to finish processing");
+                return;
+            }
+            final Result result = evaluation.get();
+            if (numEvents.get() != numEventsBefore) {
+                // the installer was active in the meantime, the result might already be outdated
+                requestCheck();
+                return;
+            }
+            future.complete(result);
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.felix.hc.api.FormattingResultLog;
+import org.apache.felix.hc.api.Result;
+import org.apache.felix.hc.api.ResultLog;
+import org.apache.sling.installer.api.info.Resource;
+import org.apache.sling.installer.api.info.ResourceGroup;
+import org.apache.sling.installer.hc.api.EntityDecision;
+import org.apache.sling.installer.hc.api.ResourceDecision;
+
+/**
+ * Records the decisions taken while evaluating a single group, see
+ * {@link OsgiInstallerHealthCheck#explainGroup(ResourceGroup, Rules)}. Only used for diagnostics, the regular
+ * evaluation does not record anything.
+ */
+final class EntityDecisionTrace implements EntityDecision {
+
+    private final Rules rules;
+
+    private final String entityId;
+
+    private final List<ResourceTrace> resources;
+
+    private boolean considered;
+
+    private Result.Status status = Result.Status.OK;
+
+    private List<String> messages = Collections.emptyList();
+
+    EntityDecisionTrace(ResourceGroup group, Rules rules) {
+        this.rules = rules;
+        this.entityId = OsgiInstallerHealthCheck.getEntityId(group);
+        this.resources = new ArrayList<>(group.getResources().size());
+        for (final Resource resource : group.getResources()) {
+            resources.add(new ResourceTrace(resource));
+        }
+    }
+
+    /**
+     * @param resource the resource whose type is not checked
+     * @param reason why the type is not checked
+     */
+    void notChecked(Resource resource, String reason) {
+        get(resource).decision = "Not checked, " + reason;
+    }
+
+    /**
+     * @param resource the resource whose URL has been checked
+     * @param decision the decision for the resource
+     */
+    void decide(Resource resource, String decision) {
+        final ResourceTrace trace = get(resource);
+        trace.matchedUrlPrefix = rules.getUrlPrefixMatcher().getMatchingPrefix(resource.getURL());
+        trace.decision = decision;
+    }
+
+    /**
+     * @param resource the resource which is not installed correctly but listed in the skip list
+     */
+    void skipped(Resource resource) {
+        final String listed = rules.getSkipList().isAnyVersionSkipped(resource.getEntityId()) ? "its entity id" : "its entity id and version";
+        decide(resource, "Not installed correctly (" + resource.getState() + "), but not reported as " + listed + " is listed in the skip list");
+        get(resource).skipListHit = true;
+    }
+
+    /**
+     * @param verdict the verdict for the group
+     * @return this trace
+     */
+    EntityDecisionTrace complete(GroupVerdict verdict) {
+        considered = !verdict.getType().isEmpty();
+        if (!verdict.getFindings().isEmpty()) {
+            status = rules.getSeverity();
+            final FormattingResultLog hcLog = new FormattingResultLog();
+            for (final Finding finding : verdict.getFindings()) {
+                finding.report(hcLog, status);
+            }
+            messages = new ArrayList<>();
+            for (final ResultLog.Entry entry : hcLog) {
+                messages.add(entry.getMessage());
+            }
+        }
+        return this;
+    }
+
+    private ResourceTrace get(Resource resource) {
+        for (final ResourceTrace trace : resources) {
+            if (trace.resource == resource) {
+                return trace;
+            }
+        }
+        throw new IllegalArgumentException("Resource " + resource + " does not belong to the group " + entityId);
+    }
+
+    @Override
+    public String getHealthCheckName() {
+        return rules.getName();
+    }
+
+    @Override
+    public String getEntityId() {
+        return entityId;
+    }
+
+    @Override
+    public boolean isConsidered() {
+        return considered;
+    }
+
+    @Override
+    public Result.Status getStatus() {
+        return status;
+    }
+
+    @Override
+    public String getGroupPolicy() {
+        if (rules.isAllowIgnoredArtifactsInGroup()) {
+            return "The group is valid as soon as one of its resources matching the URL prefixes is installed, otherwise only the first resource which is not installed correctly is reported (allowIgnoredArtifactsInGroup).";
+        }
+        return "Every resource of the group matching the URL prefixes must be installed, each one which is not installed correctly is reported.";
+    }
+
+    @Override
+    public List<ResourceDecision> getResources() {
+        return Collections.unmodifiableList(resources);
+    }
+
+    @Override
+    public List<String> getMessages() {
+        return Collections.unmodifiableList(messages);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append(entityId).append(" (").append(rules.getName()).append("): ").append(status)
+                .append(considered ? "" : ", not considered").append(System.lineSeparator());
+        builder.append("  Group policy: ").append(getGroupPolicy()).append(System.lineSeparator());
+        for (final ResourceTrace trace : resources) {
+            builder.append("  ").append(trace.resource.getURL()).append(" [").append(trace.resource.getState()).append("]");
+            if (trace.matchedUrlPrefix != null) {
+                builder.append(", matching URL prefix '").append(trace.matchedUrlPrefix).append("'");
+            }
+            builder.append(": ").append(trace.decision).append(System.lineSeparator());
+        }
+        for (final String message : messages) {
+            builder.append("  Reported: ").append(message).append(System.lineSeparator());
+        }
+        return builder.toString();
+    }
+
+    private static final class ResourceTrace implements ResourceDecision {
+        private final Resource resource;
+        private String matchedUrlPrefix;
+        private boolean skipListHit;
+        private String decision = "Not evaluated, the decision for the group has been taken before";
+
+        ResourceTrace(Resource resource) {
+            this.resource = resource;
+        }
+
+        @Override
+        public Resource getResource() {
+            return resource;
+        }
+
+        @Override
+        public String getMatchedUrlPrefix() {
+            return matchedUrlPrefix;
+        }
+
+        @Override
+        public boolean isSkipListHit() {
+            return skipListHit;
+        }
+
+        @Override
+        public String getDecision() {
+            return decision;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.installer.api.info.ResourceGroup;
+
+/**
+ * Immutable index of the resource groups of one installer state by entity id. Looking up a single entity id takes
+ * constant time, the first group with an entity id starting with a given prefix is found via binary search over the
+ * sorted entity ids.
+ */
+final class EntityIndex {
+
+    static final EntityIndex EMPTY = new EntityIndex(Collections.emptyList(), Collections.emptyMap(), new String[0]);
+
+    /** the groups the index has been built from */
+    private final List<ResourceGroup> groups;
+
+    private final Map<String, ResourceGroup> groupsByEntityId;
+
+    private final String[] sortedEntityIds;
+
+    private EntityIndex(List<ResourceGroup> groups, Map<String, ResourceGroup> groupsByEntityId, String[] sortedEntityIds) {
+        this.groups = groups;
+        this.groupsByEntityId = groupsByEntityId;
+        this.sortedEntityIds = sortedEntityIds;
+    }
+
+    /**
+     * @param groups the installed resource groups
+     * @return the index of the given groups
+     */
+    static EntityIndex of(List<ResourceGroup> groups) {
+        final Map<String, ResourceGroup> groupsByEntityId = new HashMap<>(groups.size() * 4 / 3 + 1);
+        for (final ResourceGroup group : groups) {
+            String entityId = OsgiInstallerHealthCheck.getEntityId(group);
+            if (entityId != null) {
+                groupsByEntityId.put(entityId, group);
+            }
+        }
+        final String[] sortedEntityIds = groupsByEntityId.keySet().toArray(new String[0]);
+        Arrays.sort(sortedEntityIds);
+        return new EntityIndex(groups, groupsByEntityId, sortedEntityIds);
+    }
+
+    /**
+     * @param installedResources the installed resource groups of the current installer state
+     * @return {@code true} in case this index has been built from exactly the given list (as it is the case for the
+     *         same installer state snapshot)
+     */
+    boolean isIndexOf(List<ResourceGroup> installedResources) {
+        return groups == installedResources;
+    }
+
+    /**
+     * @param entityId the entity id
+     * @return the group with the given entity id or {@code null}
+     */
+    ResourceGroup get(String entityId) {
+        return entityId != null ? groupsByEntityId.get(entityId) : null;
+    }
+
+    /**
+     * @param entityIdPrefix the prefix of the entity ids
+     * @param maxResults the maximum number of groups to return
+     * @return the groups whose entity id starts with the given prefix, ordered by entity id
+     */
+    List<ResourceGroup> getByPrefix(String entityIdPrefix, int maxResults) {
+        int index = Arrays.binarySearch(sortedEntityIds, entityIdPrefix);
+        if (index < 0) {
+            // the insertion point is the first entity id which is greater than the prefix
+            index = -index - 1;
+        }
+        final List<ResourceGroup> result = new ArrayList<>();
+        for (; index < sortedEntityIds.length && result.size() < maxResults && sortedEntityIds[index].startsWith(entityIdPrefix); index++) {
+            result.add(groupsByEntityId.get(sortedEntityIds[index]));
+        }
+        return result;
+    }
+}
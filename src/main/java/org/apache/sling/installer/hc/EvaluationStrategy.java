@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.util.List;
+
+import org.apache.sling.installer.api.event.InstallationEvent;
+import org.apache.sling.installer.api.info.ResourceGroup;
+
+/**
+ * Decides which groups are evaluated by an execution and keeps whatever later executions may reuse. A strategy is
+ * created for one compiled configuration and replaced as a whole once the configuration changes, so that nothing
+ * calculated with other rules is ever reused.
+ */
+interface EvaluationStrategy {
+
+    /**
+     * @return the rules the strategy has been created for
+     */
+    Rules getRules();
+
+    /**
+     * @param sample the sample of the current execution
+     * @return the result together with the groups it has been calculated from
+     * @throws java.util.concurrent.CancellationException in case the evaluation has been interrupted
+     */
+    CachedResult evaluate(ExecutionSample sample);
+
+    /**
+     * Called on the installer thread for every installer event, must return quickly.
+     *
+     * @param event the installer event
+     */
+    default void onEvent(InstallationEvent event) {
+        // most strategies retrieve the installer state on every execution
+    }
+
+    /**
+     * Gives the strategies access to the installer state and the group evaluation of the health check.
+     */
+    interface Context {
+
+        /**
+         * @param sample the sample of the current execution
+         * @return the groups of a new copy of the installer state
+         */
+        List<ResourceGroup> retrieveInstalledResources(ExecutionSample sample);
+
+        /**
+         * @param groups the groups to evaluate
+         * @param rules the rules to apply
+         * @param sample the sample of the current execution
+         * @return the verdicts in the order of the given groups, evaluated in parallel if enabled
+         */
+        List<GroupVerdict> evaluateGroups(List<ResourceGroup> groups, Rules rules, ExecutionSample sample);
+
+        /**
+         * @return the number of installer events received so far
+         */
+        long getInstallerEpoch();
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+
+import org.apache.sling.installer.api.event.InstallationEvent;
+import org.apache.sling.installer.api.info.ResourceGroup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Only evaluates those groups again which have been affected by installer events since the last execution or whose
+ * fingerprint has changed. In case there was no event at all the previous result is returned right away, unless it
+ * contains verdicts which must be calculated again on every execution (see {@link Rules#isReusable(GroupVerdict)}).
+ */
+final class EventDrivenEvaluation implements EvaluationStrategy {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EventDrivenEvaluation.class);
+
+    private final Rules rules;
+
+    private final Context context;
+
+    private final InstallerChangeTracker changeTracker;
+
+    /** the verdicts of the last evaluation, guarded by {@link #changeTracker} */
+    private VerdictCache verdicts = VerdictCache.EMPTY;
+
+    /** the result of the last evaluation */
+    private volatile CachedResult previousResult;
+
+    /**
+     * @param rules the rules to apply
+     * @param context the access to the installer state
+     * @param onChange called on the event thread for the first installer event after an evaluation, must return quickly
+     */
+    EventDrivenEvaluation(Rules rules, Context context, Runnable onChange) {
+        this.rules = rules;
+        this.context = context;
+        this.changeTracker = new InstallerChangeTracker(onChange);
+    }
+
+    @Override
+    public Rules getRules() {
+        return rules;
+    }
+
+    @Override
+    public void onEvent(InstallationEvent event) {
+        changeTracker.onEvent(event);
+    }
+
+    @Override
+    public CachedResult evaluate(ExecutionSample sample) {
+        CachedResult previous = previousResult;
+        if (previous != null && previous.isReusable() && !changeTracker.hasChanges()) {
+            return previous;
+        }
+        synchronized (changeTracker) {
+            previous = previousResult;
+            if (previous != null && previous.isReusable() && !changeTracker.hasChanges()) {
+                // another thread has evaluated in the meantime
+                return previous;
+            }
+            // drain before retrieving the state, so that events being fired concurrently are considered next time
+            Set<String> changedEntityIds = changeTracker.drain();
+            if (previous == null) {
+                // there are no verdicts to reuse yet
+                changedEntityIds = null;
+            }
+            try {
+                return evaluate(changedEntityIds, sample);
+            } catch (CancellationException e) {
+                // the drained events are lost, therefore all groups need to be evaluated next time
+                previousResult = null;
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Must only be called while holding the lock of the {@link #changeTracker}.
+     *
+     * @param changedEntityIds
+     *            the entity ids of the groups to evaluate again or {@code null} in case all groups need to be evaluated
+     * @param sample
+     *            the sample of the current execution
+     * @return the result of the health check
+     */
+    private CachedResult evaluate(Set<String> changedEntityIds, ExecutionSample sample) {
+        final List<ResourceGroup> groups = context.retrieveInstalledResources(sample);
+        final long[] groupFingerprints = StateFingerprint.ofEach(groups);
+        final List<GroupVerdict> groupVerdicts;
+        int numEvaluatedGroups = 0;
+        if (changedEntityIds == null) {
+            groupVerdicts = context.evaluateGroups(groups, rules, sample);
+            numEvaluatedGroups = groupVerdicts.size();
+        } else {
+            final VerdictCache previousVerdicts = verdicts;
+            groupVerdicts = new ArrayList<>(groups.size());
+            int i = 0;
+            for (final ResourceGroup group : groups) {
+                String entityId = OsgiInstallerHealthCheck.getEntityId(group);
+                GroupVerdict verdict = null;
+                // a group might also change without an event for its entity id, so its verdict is only reused while it is unchanged
+                if (entityId != null && !changedEntityIds.contains(entityId)) {
+                    verdict = previousVerdicts.get(group, groupFingerprints[i]);
+                }
+                if (verdict == null) {
+                    verdict = OsgiInstallerHealthCheck.evaluateGroup(group, rules);
+                    numEvaluatedGroups++;
+                }
+                groupVerdicts.add(verdict);
+                i++;
+            }
+            sample.evaluated(numEvaluatedGroups);
+        }
+        verdicts = VerdictCache.of(rules, groups, groupFingerprints, groupVerdicts);
+        LOG.debug("Evaluated {} of {} groups (full rescan: {})", numEvaluatedGroups, groupVerdicts.size(), changedEntityIds == null);
+        final CachedResult evaluation = new CachedResult(rules, 0, groupVerdicts, OsgiInstallerHealthCheck.buildResult(groupVerdicts, rules), groups);
+        previousResult = evaluation;
+        return evaluation;
+    }
+}
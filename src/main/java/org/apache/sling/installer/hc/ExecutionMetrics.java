@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.sling.installer.hc.api.InstallerHealthCheckMetrics;
+
+/**
+ * Accumulates the {@link ExecutionSample}s of all executions of one health check.
+ * Recording is lock-free and does not allocate, so that it can be done for every execution.
+ */
+final class ExecutionMetrics implements InstallerHealthCheckMetrics {
+
+    private final LongAdder executionCount = new LongAdder();
+    private final AtomicLong minExecutionTimeNanos = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong maxExecutionTimeNanos = new AtomicLong();
+    private final LongAdder totalExecutionTimeNanos = new LongAdder();
+    private final LongAdder totalStateRetrievalTimeNanos = new LongAdder();
+    private final LatencyHistogram executionTimeHistogram = new LatencyHistogram();
+    private final LongAdder groupsScanned = new LongAdder();
+    private final LongAdder groupsEvaluated = new LongAdder();
+    private final LongAdder resourcesScanned = new LongAdder();
+    private final LongAdder resourcesSkipped = new LongAdder();
+    private final LongAdder resourcesFailing = new LongAdder();
+    private final LongAdder resourcesIgnored = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private volatile boolean allocationsMeasurable = true;
+    private final LongAdder memoizationHits = new LongAdder();
+    private final LongAdder memoizationMisses = new LongAdder();
+    private final LongAdder joinedExecutions = new LongAdder();
+
+    /**
+     * Finishes the given sample and adds it to the metrics. Must be called by the thread which created the sample.
+     *
+     * @param sample the sample of the execution
+     */
+    void record(ExecutionSample sample) {
+        final long executionTimeNanos = System.nanoTime() - sample.getStartTime();
+        final long allocatedBytesAtEnd = AllocationMeter.getAllocatedBytes();
+        executionCount.increment();
+        minExecutionTimeNanos.accumulateAndGet(executionTimeNanos, Math::min);
+        maxExecutionTimeNanos.accumulateAndGet(executionTimeNanos, Math::max);
+        totalExecutionTimeNanos.add(executionTimeNanos);
+        totalStateRetrievalTimeNanos.add(sample.getStateRetrievalNanos());
+        executionTimeHistogram.record(executionTimeNanos);
+        groupsScanned.add(sample.getGroupsScanned());
+        groupsEvaluated.add(sample.getGroupsEvaluated());
+        resourcesScanned.add(sample.getResourcesScanned());
+        resourcesSkipped.add(sample.getResourcesSkipped());
+        resourcesFailing.add(sample.getResourcesFailing());
+        resourcesIgnored.add(sample.getResourcesIgnored());
+        if (allocatedBytesAtEnd < 0 || sample.getAllocatedBytesAtStart() < 0) {
+            allocationsMeasurable = false;
+        } else {
+            allocatedBytes.add(allocatedBytesAtEnd - sample.getAllocatedBytesAtStart());
+        }
+    }
+
+    void memoizationHit() {
+        memoizationHits.increment();
+    }
+
+    void memoizationMiss() {
+        memoizationMisses.increment();
+    }
+
+    void joinedExecution() {
+        joinedExecutions.increment();
+    }
+
+    @Override
+    public long getExecutionCount() {
+        return executionCount.sum();
+    }
+
+    @Override
+    public long getMinExecutionTimeNanos() {
+        final long min = minExecutionTimeNanos.get();
+        return min == Long.MAX_VALUE ? 0 : min;
+    }
+
+    @Override
+    public long getMaxExecutionTimeNanos() {
+        return maxExecutionTimeNanos.get();
+    }
+
+    @Override
+    public double getMeanExecutionTimeNanos() {
+        final long count = executionCount.sum();
+        return count == 0 ? 0 : (double) totalExecutionTimeNanos.sum() / count;
+    }
+
+    @Override
+    public long getExecutionTimePercentileNanos(double percentile) {
+        return executionTimeHistogram.getValueAtPercentile(percentile);
+    }
+
+    @Override
+    public long getTotalExecutionTimeNanos() {
+        return totalExecutionTimeNanos.sum();
+    }
+
+    @Override
+    public long getTotalStateRetrievalTimeNanos() {
+        return totalStateRetrievalTimeNanos.sum();
+    }
+
+    @Override
+    public long getTotalEvaluationTimeNanos() {
+        return Math.max(0, totalExecutionTimeNanos.sum() - totalStateRetrievalTimeNanos.sum());
+    }
+
+    @Override
+    public long getGroupsScanned() {
+        return groupsScanned.sum();
+    }
+
+    @Override
+    public long getGroupsEvaluated() {
+        return groupsEvaluated.sum();
+    }
+
+    @Override
+    public long getResourcesScanned() {
+        return resourcesScanned.sum();
+    }
+
+    @Override
+    public long getResourcesSkipped() {
+        return resourcesSkipped.sum();
+    }
+
+    @Override
+    public long getResourcesFailing() {
+        return resourcesFailing.sum();
+    }
+
+    @Override
+    public long getResourcesIgnored() {
+        return resourcesIgnored.sum();
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return allocationsMeasurable ? allocatedBytes.sum() : -1;
+    }
+
+    @Override
+    public long getMemoizationHits() {
+        return memoizationHits.sum();
+    }
+
+    @Override
+    public long getMemoizationMisses() {
+        return memoizationMisses.sum();
+    }
+
+    @Override
+    public long getJoinedExecutions() {
+        return joinedExecutions.sum();
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.util.List;
+
+import org.apache.sling.installer.api.info.ResourceGroup;
+
+/**
+ * The measurements of a single execution, only accessed by the executing thread.
+ */
+final class ExecutionSample {
+
+    private final long startTime = System.nanoTime();
+    private final long allocatedBytesAtStart = AllocationMeter.getAllocatedBytes();
+    private long stateRetrievalNanos;
+    private long groupsScanned;
+    private long groupsEvaluated;
+    private long resourcesScanned;
+    private long resourcesSkipped;
+    private long resourcesFailing;
+    private long resourcesIgnored;
+
+    void addStateRetrievalNanos(long nanos) {
+        stateRetrievalNanos += nanos;
+    }
+
+    /**
+     * @param groups the groups retrieved from the installer
+     * @throws java.util.concurrent.CancellationException in case the current thread has been interrupted
+     */
+    void scanned(List<ResourceGroup> groups) {
+        groupsScanned += groups.size();
+        for (ResourceGroup group : groups) {
+            OsgiInstallerHealthCheck.checkInterrupted();
+            resourcesScanned += group.getResources().size();
+        }
+    }
+
+    void evaluated(int numGroups) {
+        groupsEvaluated += numGroups;
+    }
+
+    /**
+     * @param numSkipped the number of resources which are not installed correctly but skipped
+     * @param numFailing the number of reported resources
+     * @param numIgnored the number of reported resources in state IGNORED
+     */
+    void reported(long numSkipped, long numFailing, long numIgnored) {
+        resourcesSkipped += numSkipped;
+        resourcesFailing += numFailing;
+        resourcesIgnored += numIgnored;
+    }
+
+    long getStartTime() {
+        return startTime;
+    }
+
+    long getAllocatedBytesAtStart() {
+        return allocatedBytesAtStart;
+    }
+
+    long getStateRetrievalNanos() {
+        return stateRetrievalNanos;
+    }
+
+    long getGroupsScanned() {
+        return groupsScanned;
+    }
+
+    long getGroupsEvaluated() {
+        return groupsEvaluated;
+    }
+
+    long getResourcesScanned() {
+        return resourcesScanned;
+    }
+
+    long getResourcesSkipped() {
+        return resourcesSkipped;
+    }
+
+    long getResourcesFailing() {
+        return resourcesFailing;
+    }
+
+    long getResourcesIgnored() {
+        return resourcesIgnored;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import org.apache.felix.hc.api.FormattingResultLog;
+import org.apache.felix.hc.api.Result;
+import org.apache.sling.installer.api.InstallableResource;
+import org.apache.sling.installer.api.info.Resource;
+import org.apache.sling.installer.api.tasks.ResourceState;
+import org.apache.sling.installer.hc.api.ResourceTypeEvaluator;
+
+/**
+ * A resource which is reported by the health check.
+ * Only references the resource, the message is only formatted when the result's entries are requested.
+ */
+final class Finding {
+
+    /** the number of distinct priorities, see {@link #getPriority()} */
+    static final int NUM_PRIORITIES = 6;
+
+    private final Resource resource;
+    private final String type;
+    private final ResourceState state;
+    private final ResourceTypeEvaluator evaluator;
+
+    Finding(Resource resource, String type, ResourceTypeEvaluator evaluator) {
+        this.resource = resource;
+        this.type = type;
+        this.state = resource.getState();
+        this.evaluator = evaluator;
+    }
+
+    Resource getResource() {
+        return resource;
+    }
+
+    String getType() {
+        return type;
+    }
+
+    ResourceState getState() {
+        return state;
+    }
+
+    /**
+     * Bundles are more important than configurations, as other bundles usually depend on them, and configurations are
+     * more important than resources of other types. Resources which are still to be installed are more important than
+     * ignored ones.
+     *
+     * @return the priority with which this finding is reported, 0 is the highest priority, the lowest one is
+     *         {@link #NUM_PRIORITIES} - 1 (only determines the order, all other types share one priority)
+     */
+    int getPriority() {
+        final int typePriority;
+        if (type.equals(InstallableResource.TYPE_BUNDLE)) {
+            typePriority = 0;
+        } else if (type.equals(InstallableResource.TYPE_CONFIG)) {
+            typePriority = 2;
+        } else {
+            typePriority = 4;
+        }
+        return typePriority + (state == ResourceState.INSTALL ? 0 : 1);
+    }
+
+    /**
+     * @return the label with which omitted findings are summarized, i.e. type and state
+     */
+    String getSummaryLabel() {
+        return type + "/" + state;
+    }
+
+    /**
+     * Adds the message for this finding to the given log.
+     *
+     * @param hcLog the log to add to
+     * @param severity the status of the entry, either CRITICAL or WARN
+     */
+    void report(FormattingResultLog hcLog, Result.Status severity) {
+        report(hcLog, severity, "{}", evaluator.getMessage(resource, state));
+    }
+
+    /**
+     * Adds an entry with the given severity to the given log.
+     *
+     * @param hcLog the log to add to
+     * @param severity the status of the entry, either CRITICAL or WARN
+     * @param format the message format
+     * @param args the arguments of the message
+     */
+    static void report(FormattingResultLog hcLog, Result.Status severity, String format, Object... args) {
+        if (severity == Result.Status.WARN) {
+            hcLog.warn(format, args);
+        } else {
+            hcLog.critical(format, args);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import org.apache.felix.hc.api.Result;
+import org.apache.sling.installer.api.info.ResourceGroup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Emits Java Flight Recorder events for the executions of the health check and for slow group evaluations.
+ * The JFR API is only available as of Java 11, therefore the actual implementation (in {@code src/main/java11}) is
+ * only loaded if it can be linked. Otherwise all methods of this class do nothing.
+ * Every method is cheap as long as the respective event is not enabled in a running recording.
+ */
+class FlightRecorderEvents {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FlightRecorderEvents.class);
+
+    private static final String IMPLEMENTATION = "org.apache.sling.installer.hc.JfrFlightRecorderEvents";
+
+    static final FlightRecorderEvents INSTANCE = load();
+
+    private static FlightRecorderEvents load() {
+        try {
+            return (FlightRecorderEvents) Class.forName(IMPLEMENTATION).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            LOG.debug("Java Flight Recorder events are not available", e);
+            return new FlightRecorderEvents();
+        }
+    }
+
+    /**
+     * @return {@code true} in case events are actually emitted (given they are enabled in a recording)
+     */
+    boolean isAvailable() {
+        return false;
+    }
+
+    /**
+     * @return the event to pass to {@link #commitExecution(Object, String, ExecutionSample, Result.Status)} or
+     *         {@code null} in case the event is not enabled
+     */
+    Object beginExecution() {
+        return null;
+    }
+
+    /**
+     * @param event
+     *            the event returned by {@link #beginExecution()}
+     * @param healthCheckName
+     *            the name of the health check
+     * @param sample
+     *            the sample of the execution
+     * @param status
+     *            the status of the result or {@code null} in case the execution failed
+     */
+    void commitExecution(Object event, String healthCheckName, ExecutionSample sample, Result.Status status) {
+        // JFR not available
+    }
+
+    /**
+     * @return the event to pass to {@link #commitGroupEvaluation(Object, ResourceGroup)} or {@code null} in case
+     *         the event is not enabled
+     */
+    Object beginGroupEvaluation() {
+        return null;
+    }
+
+    /**
+     * Only commits the event in case the evaluation exceeded the threshold configured for the event.
+     *
+     * @param event
+     *            the event returned by {@link #beginGroupEvaluation()}
+     * @param group
+     *            the evaluated group
+     */
+    void commitGroupEvaluation(Object event, ResourceGroup group) {
+        // JFR not available
+    }
+}
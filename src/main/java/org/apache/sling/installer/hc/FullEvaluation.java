@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.util.List;
+
+import org.apache.sling.installer.api.info.ResourceGroup;
+
+/**
+ * Evaluates all groups on every execution. This is the default strategy.
+ */
+final class FullEvaluation implements EvaluationStrategy {
+
+    private final Rules rules;
+
+    private final Context context;
+
+    FullEvaluation(Rules rules, Context context) {
+        this.rules = rules;
+        this.context = context;
+    }
+
+    @Override
+    public Rules getRules() {
+        return rules;
+    }
+
+    @Override
+    public CachedResult evaluate(ExecutionSample sample) {
+        final List<ResourceGroup> groups = context.retrieveInstalledResources(sample);
+        final List<GroupVerdict> verdicts = context.evaluateGroups(groups, rules, sample);
+        return new CachedResult(rules, 0, verdicts, OsgiInstallerHealthCheck.buildResult(verdicts, rules), groups);
+    }
+}
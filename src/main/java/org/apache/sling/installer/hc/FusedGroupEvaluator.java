@@ -0,0 +1,231 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.installer.api.info.Resource;
+import org.apache.sling.installer.api.info.ResourceGroup;
+import org.apache.sling.installer.hc.api.ResourceTypeEvaluator;
+
+/**
+ * Evaluates several rule sets in a single pass over the installed resources. The URL prefixes of all rule sets are
+ * combined into one {@link UrlPrefixMatcher}, which yields the rule sets a resource belongs to as a bit mask. Only the
+ * accumulators of those rule sets are updated for a resource, so the cost is close to the one of evaluating a single
+ * rule set, no matter how many rule sets there are. The verdicts are the same as the ones of
+ * {@link OsgiInstallerHealthCheck#evaluateGroup(ResourceGroup, Rules)} for each rule set.
+ * Instances are immutable and thread-safe.
+ */
+final class FusedGroupEvaluator {
+
+    /** the maximum number of rule sets which can be evaluated together */
+    static final int MAX_RULE_SETS = UrlPrefixMatcher.MAX_COMBINED_MATCHERS;
+
+    private final Rules[] ruleSets;
+
+    private final UrlPrefixMatcher urlPrefixMatcher;
+
+    private final long allRuleSets;
+
+    /** the rule sets checking a resource type together with their evaluators, by resource type */
+    private final Map<String, TypeDispatch> dispatchByType = new HashMap<>();
+
+    /** the rule sets allowing ignored artifacts in a group */
+    private final long allowIgnoredArtifactsInGroup;
+
+    private FusedGroupEvaluator(Rules[] ruleSets) {
+        this.ruleSets = ruleSets;
+        final UrlPrefixMatcher[] matchers = new UrlPrefixMatcher[ruleSets.length];
+        long all = 0;
+        long allowIgnored = 0;
+        for (int i = 0; i < ruleSets.length; i++) {
+            final long bit = 1L << i;
+            matchers[i] = ruleSets[i].getUrlPrefixMatcher();
+            all |= bit;
+            allowIgnored |= ruleSets[i].isAllowIgnoredArtifactsInGroup() ? bit : 0;
+            for (final Map.Entry<String, ResourceTypeEvaluator> entry : ruleSets[i].getTypeEvaluators().entrySet()) {
+                dispatchByType.computeIfAbsent(entry.getKey(), type -> new TypeDispatch()).add(entry.getValue(), bit);
+            }
+        }
+        urlPrefixMatcher = UrlPrefixMatcher.combine(matchers);
+        allRuleSets = all;
+        allowIgnoredArtifactsInGroup = allowIgnored;
+    }
+
+    /**
+     * @param ruleSets the rule sets to evaluate together, at most {@link #MAX_RULE_SETS}
+     * @return the evaluator
+     */
+    static FusedGroupEvaluator compile(Rules[] ruleSets) {
+        if (ruleSets.length > MAX_RULE_SETS) {
+            throw new IllegalArgumentException("At most " + MAX_RULE_SETS + " rule sets can be evaluated together but got " + ruleSets.length);
+        }
+        return new FusedGroupEvaluator(ruleSets.clone());
+    }
+
+    /**
+     * @param groups the groups to evaluate
+     * @return the verdicts per rule set (in the order in which the rule sets have been given), each in the order of
+     *         the given groups
+     */
+    List<List<GroupVerdict>> evaluate(List<ResourceGroup> groups) {
+        final List<List<GroupVerdict>> verdicts = new ArrayList<>(ruleSets.length);
+        for (int i = 0; i < ruleSets.length; i++) {
+            verdicts.add(new ArrayList<>(groups.size()));
+        }
+        final Accumulators accumulators = new Accumulators(ruleSets.length);
+        for (final ResourceGroup group : groups) {
+            final Object event = FlightRecorderEvents.INSTANCE.beginGroupEvaluation();
+            evaluateGroup(group, accumulators, verdicts);
+            FlightRecorderEvents.INSTANCE.commitGroupEvaluation(event, group);
+        }
+        return verdicts;
+    }
+
+    private void evaluateGroup(ResourceGroup group, Accumulators accumulators, List<List<GroupVerdict>> verdicts) {
+        OsgiInstallerHealthCheck.checkInterrupted();
+        // the rule sets which still need to look at further resources of this group
+        long pending = allRuleSets;
+        // the rule sets for which at least one resource matched the URL prefixes
+        long relevant = 0;
+        String resourceType = "";
+        for (final Resource resource : group.getResources()) {
+            resourceType = resource.getType();
+            final TypeDispatch dispatch = dispatchByType.get(resourceType);
+            final long checked = dispatch != null ? dispatch.checked : 0;
+            complete(pending & ~checked, "", accumulators, verdicts);
+            pending &= checked;
+            if (pending == 0) {
+                return;
+            }
+            final long matching = urlPrefixMatcher.match(resource.getURL()) & pending;
+            if (matching == 0) {
+                continue;
+            }
+            relevant |= matching;
+            final long invalid = dispatch.evaluate(resource, matching);
+            for (long bits = invalid & ~allowIgnoredArtifactsInGroup; bits != 0; bits &= bits - 1) {
+                final int i = Long.numberOfTrailingZeros(bits);
+                accumulators.addInvalidResource(i, resource, resourceType, ruleSets[i]);
+            }
+            for (long bits = invalid & allowIgnoredArtifactsInGroup; bits != 0; bits &= bits - 1) {
+                final int i = Long.numberOfTrailingZeros(bits);
+                if (accumulators.invalidResources[i] == null) {
+                    accumulators.invalidResources[i] = resource;
+                }
+            }
+            // a valid resource completes the group for the rule sets allowing ignored artifacts
+            final long valid = matching & ~invalid & allowIgnoredArtifactsInGroup;
+            complete(valid, resourceType, accumulators, verdicts);
+            pending &= ~valid;
+        }
+        for (long bits = pending; bits != 0; bits &= bits - 1) {
+            final int i = Long.numberOfTrailingZeros(bits);
+            final Resource invalidResource = accumulators.invalidResources[i];
+            if (invalidResource != null) {
+                accumulators.addInvalidResource(i, invalidResource, resourceType, ruleSets[i]);
+            }
+        }
+        complete(pending & relevant, resourceType, accumulators, verdicts);
+        complete(pending & ~relevant, "", accumulators, verdicts);
+    }
+
+    private static void complete(long ruleSetMask, String type, Accumulators accumulators, List<List<GroupVerdict>> verdicts) {
+        for (long bits = ruleSetMask; bits != 0; bits &= bits - 1) {
+            final int i = Long.numberOfTrailingZeros(bits);
+            verdicts.get(i).add(OsgiInstallerHealthCheck.verdict(type, accumulators.findings[i], accumulators.numSkippedResources[i]));
+            accumulators.reset(i);
+        }
+    }
+
+    /**
+     * The rule sets checking one resource type, grouped by evaluator so that every distinct evaluator is only called
+     * once per resource (usually all rule sets share the same evaluator).
+     */
+    private static final class TypeDispatch {
+        /** the rule sets checking the type */
+        private long checked;
+        private ResourceTypeEvaluator[] evaluators = new ResourceTypeEvaluator[0];
+        /** the rule sets using the evaluator at the same index */
+        private long[] ruleSetMasks = new long[0];
+
+        void add(ResourceTypeEvaluator evaluator, long ruleSetMask) {
+            checked |= ruleSetMask;
+            for (int j = 0; j < evaluators.length; j++) {
+                if (evaluators[j] == evaluator) {
+                    ruleSetMasks[j] |= ruleSetMask;
+                    return;
+                }
+            }
+            evaluators = Arrays.copyOf(evaluators, evaluators.length + 1);
+            ruleSetMasks = Arrays.copyOf(ruleSetMasks, ruleSetMasks.length + 1);
+            evaluators[evaluators.length - 1] = evaluator;
+            ruleSetMasks[ruleSetMasks.length - 1] = ruleSetMask;
+        }
+
+        /**
+         * @param resource the resource to evaluate
+         * @param ruleSetMask the rule sets to evaluate the resource for
+         * @return the rule sets for which the resource is not installed correctly
+         */
+        long evaluate(Resource resource, long ruleSetMask) {
+            long invalid = 0;
+            for (int j = 0; j < evaluators.length; j++) {
+                if ((ruleSetMasks[j] & ruleSetMask) != 0 && !evaluators[j].isInstalledCorrectly(resource)) {
+                    invalid |= ruleSetMasks[j];
+                }
+            }
+            return invalid & ruleSetMask;
+        }
+    }
+
+    /**
+     * The state of the group being evaluated for each rule set. Reset once the verdict of a rule set is complete, so
+     * that it can be reused for all groups.
+     */
+    private static final class Accumulators {
+        private final List<Finding>[] findings;
+        private final int[] numSkippedResources;
+        private final Resource[] invalidResources;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Accumulators(int numRuleSets) {
+            findings = new List[numRuleSets];
+            numSkippedResources = new int[numRuleSets];
+            invalidResources = new Resource[numRuleSets];
+        }
+
+        void addInvalidResource(int i, Resource resource, String resourceType, Rules rules) {
+            if (!OsgiInstallerHealthCheck.isSkipped(resource, rules)) {
+                findings[i] = OsgiInstallerHealthCheck.addFinding(findings[i], resource, resourceType, rules.getTypeEvaluator(resourceType));
+            } else {
+                numSkippedResources[i]++;
+            }
+        }
+
+        void reset(int i) {
+            findings[i] = null;
+            numSkippedResources[i] = 0;
+            invalidResources[i] = null;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.sling.installer.api.InstallableResource;
+
+/**
+ * The outcome of evaluating a single resource group (i.e. all resources sharing the same entity id).
+ * Instances are immutable so that they can be kept across executions.
+ */
+final class GroupVerdict {
+
+    static final GroupVerdict NOT_CONSIDERED = new GroupVerdict("", Collections.emptyList());
+
+    private static final GroupVerdict VALID_BUNDLE = new GroupVerdict(InstallableResource.TYPE_BUNDLE, Collections.emptyList());
+
+    private static final GroupVerdict VALID_CONFIGURATION = new GroupVerdict(InstallableResource.TYPE_CONFIG, Collections.emptyList());
+
+    private final String type;
+
+    private final List<Finding> findings;
+
+    private final int numSkippedResources;
+
+    GroupVerdict(String type, List<Finding> findings) {
+        this(type, findings, 0);
+    }
+
+    GroupVerdict(String type, List<Finding> findings, int numSkippedResources) {
+        this.type = type;
+        this.findings = findings;
+        this.numSkippedResources = numSkippedResources;
+    }
+
+    /**
+     * @param type the type of resources in the group or empty string if the group was not considered
+     * @return a verdict without findings (shared for the common types)
+     */
+    static GroupVerdict withoutFindings(String type) {
+        switch (type) {
+        case "":
+            return NOT_CONSIDERED;
+        case InstallableResource.TYPE_BUNDLE:
+            return VALID_BUNDLE;
+        case InstallableResource.TYPE_CONFIG:
+            return VALID_CONFIGURATION;
+        default:
+            return new GroupVerdict(type, Collections.emptyList());
+        }
+    }
+
+    /**
+     * @return the type of resources in this group ("bundle" or "config") or empty string, if the group was not
+     *         considered by the health check
+     */
+    String getType() {
+        return type;
+    }
+
+    /**
+     * @return the resources which need to be reported, in the order in which they should be reported (never
+     *         {@code null})
+     */
+    List<Finding> getFindings() {
+        return findings;
+    }
+
+    /**
+     * @return the number of invalid resources which have not been reported as they are listed in the skip list
+     */
+    int getNumSkippedResources() {
+        return numSkippedResources;
+    }
+}
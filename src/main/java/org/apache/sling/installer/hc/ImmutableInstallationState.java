@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.sling.installer.api.info.InstallationState;
+import org.apache.sling.installer.api.info.ResourceGroup;
+import org.apache.sling.installer.api.tasks.RegisteredResource;
+
+/**
+ * Read-only view of an {@link InstallationState}, so that it can be shared between multiple consumers.
+ */
+final class ImmutableInstallationState implements InstallationState {
+
+    private final List<ResourceGroup> activeResources;
+    private final List<ResourceGroup> installedResources;
+    private final List<RegisteredResource> untransformedResources;
+
+    ImmutableInstallationState(InstallationState state) {
+        activeResources = Collections.unmodifiableList(state.getActiveResources());
+        installedResources = Collections.unmodifiableList(state.getInstalledResources());
+        untransformedResources = Collections.unmodifiableList(state.getUntransformedResources());
+    }
+
+    @Override
+    public List<ResourceGroup> getActiveResources() {
+        return activeResources;
+    }
+
+    @Override
+    public List<ResourceGroup> getInstalledResources() {
+        return installedResources;
+    }
+
+    @Override
+    public List<RegisteredResource> getUntransformedResources() {
+        return untransformedResources;
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+@ObjectClassDefinition(
+    name = "Apache Sling Installer Health Checks - Installation State Snapshots",
+    description = "Shares snapshots of the OSGi installer state between all health checks, so that the installer does not need to build a copy of its state for every single one."
+)
+@interface InstallationStateSnapshotServiceConfiguration {
+
+    @AttributeDefinition(
+        name = "Invalidate on installer events",
+        description = "If enabled a snapshot is only reused until the OSGi installer emits the next event."
+    )
+    boolean invalidateOnInstallerEvents() default true;
+
+    @AttributeDefinition(
+        name = "Maximum snapshot age (ms)",
+        description = "A snapshot is never reused once it is older than the given number of milliseconds. 0 means no limit (the default), i.e. a snapshot is only replaced after an installer event and changes of the installer state which are not signalled by an event are not seen until the next one. In that case 'Invalidate on installer events' should be enabled, otherwise a new snapshot is built for every request."
+    )
+    long maxSnapshotAgeInMs() default 0;
+}
@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.DynamicMBean;
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+
+import org.apache.sling.installer.api.event.InstallationEvent;
+import org.apache.sling.installer.api.event.InstallationListener;
+import org.apache.sling.installer.api.info.InfoProvider;
+import org.apache.sling.installer.api.info.InstallationState;
+import org.apache.sling.installer.hc.api.InstallationStateSnapshotMetrics;
+import org.apache.sling.installer.hc.api.InstallationStateSnapshotService;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.Designate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Builds at most one snapshot of the installer state per installer event epoch (i.e. between two installer events)
+ * and/or per configured interval and hands the same snapshot to all consumers.
+ */
+@Component(
+    service = {
+        InstallationStateSnapshotService.class,
+        InstallationStateSnapshotMetrics.class,
+        InstallationListener.class
+    }
+)
+@Designate(
+    ocd = InstallationStateSnapshotServiceConfiguration.class
+)
+public class InstallationStateSnapshotServiceImpl implements InstallationStateSnapshotService, InstallationStateSnapshotMetrics, InstallationListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InstallationStateSnapshotServiceImpl.class);
+
+    @Reference
+    private InfoProvider infoProvider;
+
+    private volatile boolean invalidateOnInstallerEvents;
+
+    private volatile long maxSnapshotAgeNanos;
+
+    /** incremented with every installer event */
+    private final AtomicLong epoch = new AtomicLong();
+
+    private volatile Snapshot snapshot;
+
+    private final LongAdder snapshotsBuilt = new LongAdder();
+
+    private final LongAdder snapshotsAvoided = new LongAdder();
+
+    private ServiceRegistration<DynamicMBean> mbeanRegistration;
+
+    @Activate
+    protected void activate(BundleContext bundleContext, InstallationStateSnapshotServiceConfiguration configuration) {
+        configure(configuration);
+        try {
+            final Dictionary<String, Object> properties = new Hashtable<>();
+            properties.put("jmx.objectname", "org.apache.sling.installer.hc:type=InstallationStateSnapshots");
+            mbeanRegistration = bundleContext.registerService(DynamicMBean.class,
+                    new StandardMBean(this, InstallationStateSnapshotMetrics.class), properties);
+        } catch (NotCompliantMBeanException e) {
+            LOG.warn("Cannot register the snapshot metrics as MBean", e);
+        }
+    }
+
+    @Modified
+    protected void configure(InstallationStateSnapshotServiceConfiguration configuration) {
+        invalidateOnInstallerEvents = configuration.invalidateOnInstallerEvents();
+        maxSnapshotAgeNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, configuration.maxSnapshotAgeInMs()));
+        snapshot = null;
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        if (mbeanRegistration != null) {
+            mbeanRegistration.unregister();
+            mbeanRegistration = null;
+        }
+        snapshot = null;
+    }
+
+    @Override
+    public void onEvent(InstallationEvent event) {
+        epoch.incrementAndGet();
+    }
+
+    @Override
+    public InstallationState getSnapshot() {
+        Snapshot current = snapshot;
+        if (isReusable(current)) {
+            snapshotsAvoided.increment();
+            return current.state;
+        }
+        synchronized (this) {
+            // another thread might have built a snapshot in the meantime
+            current = snapshot;
+            if (isReusable(current)) {
+                snapshotsAvoided.increment();
+                return current.state;
+            }
+            // read the epoch before retrieving the state, so that concurrent events invalidate the new snapshot
+            final long currentEpoch = epoch.get();
+            final long createdAt = System.nanoTime();
+            current = new Snapshot(new ImmutableInstallationState(infoProvider.getInstallationState()), currentEpoch, createdAt);
+            snapshot = current;
+            snapshotsBuilt.increment();
+            return current.state;
+        }
+    }
+
+    private boolean isReusable(Snapshot current) {
+        if (current == null) {
+            return false;
+        }
+        final boolean invalidateOnEvents = invalidateOnInstallerEvents;
+        final long maxAgeNanos = maxSnapshotAgeNanos;
+        if (!invalidateOnEvents && maxAgeNanos == 0) {
+            return false;
+        }
+        if (invalidateOnEvents && current.epoch != epoch.get()) {
+            return false;
+        }
+        return maxAgeNanos == 0 || System.nanoTime() - current.createdAt < maxAgeNanos;
+    }
+
+    @Override
+    public long getSnapshotsBuilt() {
+        return snapshotsBuilt.sum();
+    }
+
+    @Override
+    public long getSnapshotsAvoided() {
+        return snapshotsAvoided.sum();
+    }
+
+    private static final class Snapshot {
+        private final InstallationState state;
+        private final long epoch;
+        private final long createdAt;
+
+        Snapshot(InstallationState state, long epoch, long createdAt) {
+            this.state = state;
+            this.epoch = epoch;
+            this.createdAt = createdAt;
+        }
+    }
+}
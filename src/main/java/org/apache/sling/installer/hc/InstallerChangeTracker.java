@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.sling.installer.api.event.InstallationEvent;
+import org.apache.sling.installer.api.tasks.RegisteredResource;
+
+/**
+ * Collects the changes signalled by OSGi installer events since the last evaluation.
+ * All methods may be called concurrently: events are delivered on the installer thread while the health check is
+ * executed on arbitrary threads.
+ * <p>
+ * During startup or large deployments the installer emits thousands of events within seconds. Recording an event
+ * therefore only appends the entity id to a lock-free queue, the entity ids are only deduplicated once they are
+ * drained by the next evaluation. So the evaluation cost depends on the number of distinct changed entities only. In
+ * case more than {@value #MAX_QUEUED_ENTITY_IDS} entity ids are queued, the queue is no longer filled and a full
+ * rescan is requested instead, which bounds the memory used during an event storm.
+ */
+final class InstallerChangeTracker {
+
+    static final int MAX_QUEUED_ENTITY_IDS = 10000;
+
+    private final Queue<String> changedEntityIds = new ConcurrentLinkedQueue<>();
+
+    /** the (approximate) size of {@link #changedEntityIds} as the queue's size() is not constant time */
+    private final AtomicInteger numQueuedEntityIds = new AtomicInteger();
+
+    /** set as long as there has been an event which was not yet considered by an evaluation */
+    private final AtomicBoolean changed = new AtomicBoolean(true);
+
+    /** set if the events do not allow to tell which groups are affected */
+    private final AtomicBoolean rescanRequired = new AtomicBoolean(true);
+
+    private final Runnable onChange;
+
+    /**
+     * @param onChange called on the event thread for the first change after the last call of {@link #drain()}, must
+     *            return quickly
+     */
+    InstallerChangeTracker(Runnable onChange) {
+        this.onChange = onChange;
+    }
+
+    void onEvent(InstallationEvent event) {
+        switch (event.getType()) {
+        case PROCESSED:
+            Object source = event.getSource();
+            if (source instanceof RegisteredResource && ((RegisteredResource) source).getEntityId() != null) {
+                if (numQueuedEntityIds.incrementAndGet() <= MAX_QUEUED_ENTITY_IDS) {
+                    changedEntityIds.offer(((RegisteredResource) source).getEntityId());
+                } else {
+                    numQueuedEntityIds.decrementAndGet();
+                    rescanRequired.set(true);
+                }
+            } else {
+                // cannot tell which group was affected
+                rescanRequired.set(true);
+            }
+            markChanged();
+            break;
+        case SUSPENDED:
+            // the installer finished a cycle, groups might have been removed without a dedicated event
+            markChanged();
+            break;
+        default:
+            // STARTED is always followed by the events of the processed resources
+            break;
+        }
+    }
+
+    /**
+     * Forces the next evaluation to consider every group again.
+     */
+    void invalidate() {
+        rescanRequired.set(true);
+        markChanged();
+    }
+
+    private void markChanged() {
+        if (!changed.getAndSet(true)) {
+            onChange.run();
+        }
+    }
+
+    /**
+     * @return {@code true} in case there has been a change since the last call of {@link #drain()}
+     */
+    boolean hasChanges() {
+        return changed.get();
+    }
+
+    /**
+     * Returns all changes since the last call and resets the tracker.
+     *
+     * @return the entity ids of the groups which need to be evaluated again or {@code null} in case all groups need to
+     *         be evaluated again
+     */
+    Set<String> drain() {
+        changed.set(false);
+        boolean isRescanRequired = rescanRequired.getAndSet(false);
+        Set<String> entityIds = new HashSet<>();
+        String entityId;
+        while ((entityId = changedEntityIds.poll()) != null) {
+            numQueuedEntityIds.decrementAndGet();
+            entityIds.add(entityId);
+        }
+        return isRescanRequired ? null : Collections.unmodifiableSet(entityIds);
+    }
+}
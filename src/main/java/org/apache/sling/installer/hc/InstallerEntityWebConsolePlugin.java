@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.Servlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.sling.installer.hc.api.EntityDecision;
+import org.apache.sling.installer.hc.api.InstallerEntityInspector;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
+
+/**
+ * Web console plugin showing the decisions of all OSGi installer health checks for a single entity id or all entity
+ * ids starting with a prefix (given with a trailing {@code *}), e.g.
+ * {@code /system/console/installerentities?entityId=config:com.acme.*}. The decisions are returned as plain text for
+ * {@code /system/console/installerentities.txt}.
+ */
+@Component(
+    service = Servlet.class,
+    property = {
+        "felix.webconsole.label=" + InstallerEntityWebConsolePlugin.LABEL,
+        "felix.webconsole.title=Installer Entities",
+        "felix.webconsole.category=Sling"
+    }
+)
+public class InstallerEntityWebConsolePlugin extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    static final String LABEL = "installerentities";
+
+    static final String PARAMETER_ENTITY_ID = "entityId";
+
+    /** the maximum number of groups shown for a prefix per health check */
+    static final int MAX_RESULTS = 100;
+
+    @Reference(cardinality = ReferenceCardinality.MULTIPLE, policy = ReferencePolicy.DYNAMIC, policyOption = ReferencePolicyOption.GREEDY)
+    private transient volatile List<InstallerEntityInspector> inspectors;
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        final String entityId = request.getParameter(PARAMETER_ENTITY_ID);
+        final String report = entityId == null || entityId.isEmpty() ? "" : inspect(entityId);
+        if (request.getRequestURI().endsWith(".txt")) {
+            response.setContentType("text/plain");
+            response.setCharacterEncoding("UTF-8");
+            response.getWriter().print(report);
+            return;
+        }
+        response.setContentType("text/html");
+        response.setCharacterEncoding("UTF-8");
+        final PrintWriter writer = response.getWriter();
+        writer.print("<form method='get'><p>Entity id (use a trailing * for all entity ids starting with a prefix): <input type='text' name='");
+        writer.print(PARAMETER_ENTITY_ID);
+        writer.print("' size='80' value='");
+        writer.print(escape(entityId == null ? "" : entityId));
+        writer.println("'/> <input type='submit' value='Inspect'/></p></form>");
+        writer.print("<pre>");
+        writer.print(escape(report));
+        writer.println("</pre>");
+    }
+
+    /**
+     * @param entityId the entity id or prefix (with a trailing {@code *})
+     * @return the decisions of all health checks
+     */
+    String inspect(String entityId) {
+        final StringWriter report = new StringWriter();
+        final PrintWriter writer = new PrintWriter(report);
+        final List<InstallerEntityInspector> currentInspectors = inspectors;
+        if (currentInspectors == null || currentInspectors.isEmpty()) {
+            writer.println("No OSGi installer health check is active.");
+            return report.toString();
+        }
+        for (final InstallerEntityInspector inspector : currentInspectors) {
+            final List<EntityDecision> decisions;
+            if (entityId.endsWith("*")) {
+                decisions = inspector.inspectByPrefix(entityId.substring(0, entityId.length() - 1), MAX_RESULTS + 1);
+            } else {
+                decisions = new ArrayList<>(1);
+                final EntityDecision decision = inspector.inspect(entityId);
+                if (decision != null) {
+                    decisions.add(decision);
+                }
+            }
+            if (decisions.isEmpty()) {
+                writer.println("The OSGi installer has no group with entity id " + entityId);
+                // the installer state is the same for all health checks
+                break;
+            }
+            for (final EntityDecision decision : decisions.subList(0, Math.min(decisions.size(), MAX_RESULTS))) {
+                writer.println(decision);
+            }
+            if (decisions.size() > MAX_RESULTS) {
+                writer.println("Only the first " + MAX_RESULTS + " groups are shown.");
+            }
+        }
+        return report.toString();
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("'", "&#39;").replace("\"", "&quot;");
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import org.apache.sling.installer.api.info.Resource;
+import org.apache.sling.installer.api.tasks.ResourceState;
+import org.apache.sling.installer.hc.api.ResourceTypeEvaluator;
+
+/**
+ * The built-in evaluator for bundles and configurations, which only relies on the state of the resource: resources
+ * which are still to be installed or which have been ignored by the installer are not installed correctly.
+ */
+final class InstallerStateEvaluator implements ResourceTypeEvaluator {
+
+    static final InstallerStateEvaluator BUNDLE = new InstallerStateEvaluator("The installer state of the OSGi bundle resource '",
+            ", probably because a later or the same version of that bundle is already installed!");
+
+    static final InstallerStateEvaluator CONFIGURATION = new InstallerStateEvaluator("The installer state of the OSGi configuration resource '",
+            ", config might have been manually overwritten!");
+
+    private final String messagePrefix;
+
+    private final String messageSuffix;
+
+    private InstallerStateEvaluator(String messagePrefix, String messageSuffix) {
+        this.messagePrefix = messagePrefix;
+        this.messageSuffix = messageSuffix;
+    }
+
+    @Override
+    public boolean isInstalledCorrectly(Resource resource) {
+        final ResourceState state = resource.getState();
+        return state != ResourceState.IGNORED && state != ResourceState.INSTALL;
+    }
+
+    @Override
+    public String getMessage(Resource resource, ResourceState state) {
+        return messagePrefix + resource + "' is " + state + messageSuffix;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative values (e.g. durations in nanoseconds) with logarithmic buckets, similar to an
+ * HDR histogram with one significant decimal digit.
+ * Every power of two is divided into {@value #SUB_BUCKETS} linear sub buckets, so that the relative error of the
+ * reported values is at most 1/{@value #SUB_BUCKETS} independent of their magnitude. Recording a value neither locks
+ * nor allocates.
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /** values below this limit get a bucket of their own */
+    private static final long LINEAR_LIMIT = 2 * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(bucketIndex(Long.MAX_VALUE) + 1);
+
+    /**
+     * @param value the value to record, negative values are recorded as 0
+     */
+    void record(long value) {
+        counts.incrementAndGet(bucketIndex(Math.max(0, value)));
+    }
+
+    /**
+     * @param percentile the percentile between 0 and 100
+     * @return the highest value which is equivalent to the value at the given percentile or 0 in case no value has
+     *         been recorded
+     */
+    long getValueAtPercentile(double percentile) {
+        final long[] snapshot = new long[counts.length()];
+        long totalCount = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            totalCount += snapshot[i];
+        }
+        if (totalCount == 0) {
+            return 0;
+        }
+        final double boundedPercentile = Math.min(Math.max(percentile, 0), 100);
+        final long rank = Math.max(1, (long) Math.ceil(boundedPercentile / 100 * totalCount));
+        long count = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            count += snapshot[i];
+            if (count >= rank) {
+                return highestEquivalentValue(i);
+            }
+        }
+        return highestEquivalentValue(snapshot.length - 1);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        // the sub bucket lies in [SUB_BUCKETS, 2 * SUB_BUCKETS)
+        final int subBucket = (int) (value >>> shift);
+        return (shift + 1) * SUB_BUCKETS + subBucket - SUB_BUCKETS;
+    }
+
+    static long highestEquivalentValue(int bucketIndex) {
+        if (bucketIndex < LINEAR_LIMIT) {
+            return bucketIndex;
+        }
+        final int shift = bucketIndex / SUB_BUCKETS - 1;
+        final long subBucket = bucketIndex % SUB_BUCKETS + SUB_BUCKETS;
+        final long upperBound = (subBucket + 1) << shift;
+        // the last bucket would overflow
+        return upperBound < 0 ? Long.MAX_VALUE : upperBound - 1;
+    }
+}
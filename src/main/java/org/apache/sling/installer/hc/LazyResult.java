@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.util.Iterator;
+import java.util.function.Supplier;
+
+import org.apache.felix.hc.api.Result;
+import org.apache.felix.hc.api.ResultLog;
+
+/**
+ * Result whose status is known upfront, but whose log entries are only rendered once they are requested.
+ * Callers only interested in the status (like load balancer probes) therefore never pay for formatting the messages.
+ */
+final class LazyResult extends Result {
+
+    private final Status status;
+
+    /** guarded by this, released once the log has been rendered */
+    private Supplier<ResultLog> renderer;
+
+    /** guarded by this */
+    private ResultLog renderedLog;
+
+    /**
+     * @param status the status, must be the aggregate status of the log returned by the renderer
+     * @param renderer creates the log entries, called at most once
+     */
+    LazyResult(Status status, Supplier<ResultLog> renderer) {
+        super(new ResultLog());
+        this.status = status;
+        this.renderer = renderer;
+    }
+
+    @Override
+    public Status getStatus() {
+        return status;
+    }
+
+    @Override
+    public Iterator<ResultLog.Entry> iterator() {
+        return getRenderedLog().iterator();
+    }
+
+    private synchronized ResultLog getRenderedLog() {
+        if (renderedLog == null) {
+            renderedLog = renderer.get();
+            renderer = null;
+        }
+        return renderedLog;
+    }
+
+    @Override
+    public String toString() {
+        return "Result [status=" + status + ", resultLog=" + getRenderedLog() + "]";
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.sling.installer.api.info.ResourceGroup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Returns the previous result as long as the installer state is unchanged and otherwise only evaluates those groups
+ * again whose fingerprint has changed (see {@link StateFingerprint}).
+ */
+final class MemoizingEvaluation implements EvaluationStrategy {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MemoizingEvaluation.class);
+
+    private final Rules rules;
+
+    private final Context context;
+
+    private final ExecutionMetrics metrics;
+
+    /** the result of the last evaluation, only set in case it may be reused */
+    private volatile CachedResult memoizedResult;
+
+    /** the verdicts of the last evaluation, only accessed by one evaluation at a time */
+    private volatile VerdictCache verdictCache = VerdictCache.EMPTY;
+
+    MemoizingEvaluation(Rules rules, Context context, ExecutionMetrics metrics) {
+        this.rules = rules;
+        this.context = context;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Rules getRules() {
+        return rules;
+    }
+
+    @Override
+    public CachedResult evaluate(ExecutionSample sample) {
+        final List<ResourceGroup> groups = context.retrieveInstalledResources(sample);
+        final long[] groupFingerprints = StateFingerprint.ofEach(groups);
+        final long fingerprint = StateFingerprint.of(groupFingerprints);
+        final CachedResult previous = memoizedResult;
+        if (previous != null && previous.getFingerprint() == fingerprint && StateFingerprint.isSameState(groups, previous.getGroups())) {
+            metrics.memoizationHit();
+            LOG.debug("Installer state unchanged, reusing previous result (hits: {}, misses: {})", metrics.getMemoizationHits(), metrics.getMemoizationMisses());
+            return previous;
+        }
+        metrics.memoizationMiss();
+        final List<GroupVerdict> verdicts = evaluateChangedGroups(groups, groupFingerprints, sample);
+        final CachedResult evaluation = new CachedResult(rules, fingerprint, verdicts, OsgiInstallerHealthCheck.buildResult(verdicts, rules), groups);
+        // the verdicts of registered evaluators must be calculated again on every execution
+        memoizedResult = evaluation.isReusable() ? evaluation : null;
+        return evaluation;
+    }
+
+    /**
+     * Only evaluates those groups again whose fingerprint has changed since the last evaluation.
+     *
+     * @param groups
+     *            the resource groups to evaluate
+     * @param groupFingerprints
+     *            the fingerprints of the given groups
+     * @param sample
+     *            the sample of the current execution
+     * @return the verdicts in the order of the given groups
+     */
+    private List<GroupVerdict> evaluateChangedGroups(List<ResourceGroup> groups, long[] groupFingerprints, ExecutionSample sample) {
+        final VerdictCache previousVerdicts = verdictCache;
+        final List<GroupVerdict> verdicts;
+        if (!previousVerdicts.isValidFor(rules)) {
+            verdicts = context.evaluateGroups(groups, rules, sample);
+        } else {
+            verdicts = new ArrayList<>(groups.size());
+            int numEvaluatedGroups = 0;
+            int i = 0;
+            for (final ResourceGroup group : groups) {
+                GroupVerdict verdict = previousVerdicts.get(group, groupFingerprints[i++]);
+                if (verdict == null) {
+                    verdict = OsgiInstallerHealthCheck.evaluateGroup(group, rules);
+                    numEvaluatedGroups++;
+                }
+                verdicts.add(verdict);
+            }
+            sample.evaluated(numEvaluatedGroups);
+            LOG.debug("Evaluated {} of {} groups whose fingerprint has changed", numEvaluatedGroups, verdicts.size());
+        }
+        verdictCache = VerdictCache.of(rules, groups, groupFingerprints, verdicts);
+        return verdicts;
+    }
+}
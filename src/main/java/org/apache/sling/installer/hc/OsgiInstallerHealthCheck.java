@@ -18,214 +18,896 @@
 package org.apache.sling.installer.hc;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.time.Duration;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import javax.management.DynamicMBean;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 
 import org.apache.felix.hc.api.HealthCheck;
 import org.apache.felix.hc.api.Result;
 import org.apache.felix.hc.api.FormattingResultLog;
+import org.apache.felix.hc.api.ResultLog;
 import org.apache.sling.installer.api.InstallableResource;
+import org.apache.sling.installer.api.event.InstallationEvent;
+import org.apache.sling.installer.api.event.InstallationListener;
 import org.apache.sling.installer.api.info.InfoProvider;
-import org.apache.sling.installer.api.info.InstallationState;
 import org.apache.sling.installer.api.info.Resource;
 import org.apache.sling.installer.api.info.ResourceGroup;
-import org.osgi.framework.Version;
+import org.apache.sling.installer.hc.api.EntityDecision;
+import org.apache.sling.installer.hc.api.InstallerConvergence;
+import org.apache.sling.installer.hc.api.InstallerEntityInspector;
+import org.apache.sling.installer.hc.api.ResourceTypeEvaluator;
+import org.apache.sling.installer.hc.api.InstallerHealthCheckMetrics;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.ConfigurationPolicy;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Modified;
 import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
 import org.osgi.service.metatype.annotations.Designate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 @Component(
+    service = {
+        HealthCheck.class,
+        InstallationListener.class,
+        InstallerConvergence.class,
+        InstallerEntityInspector.class
+    },
+    // keeps the default instance unless there are factory configurations
+    configurationPolicy = ConfigurationPolicy.OPTIONAL,
     property = {
-        HealthCheck.NAME + "=" + OsgiInstallerHealthCheck.HC_NAME
+        HealthCheck.NAME + "=" + OsgiInstallerHealthCheck.HC_NAME,
+        "webconsole.configurationFactory.nameHint=Name: {hc.name}, URL prefixes: {urlPrefixes}, severity: {severity}"
     }
 )
 @Designate(
-    ocd = OsgiInstallerHealthCheckConfiguration.class
+    ocd = OsgiInstallerHealthCheckConfiguration.class,
+    factory = true
 )
-public class OsgiInstallerHealthCheck implements HealthCheck {
+public class OsgiInstallerHealthCheck implements HealthCheck, InstallationListener, InstallerConvergence, InstallerEntityInspector {
     protected static final String HC_NAME = "OSGi Installer Health Check";
 
     @Reference
     private InfoProvider infoProvider;
 
+    /** evaluates the rules of all instances with shared evaluation together, used as soon as there is more than one */
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL, policy = ReferencePolicy.DYNAMIC, policyOption = ReferencePolicyOption.GREEDY)
+    private volatile SharedInstallerStateEvaluator sharedEvaluator;
+
     private static final Logger LOG = LoggerFactory.getLogger(OsgiInstallerHealthCheck.class);
 
-    private OsgiInstallerHealthCheckConfiguration configuration;
-    private Map<String, List<Version>> skipEntityIdsWithVersions;
-    
+    /** the evaluators for resource types registered as services */
+    private final ResourceTypeEvaluatorRegistry typeEvaluators = new ResourceTypeEvaluatorRegistry();
+
+    /** the last configuration, compiled again once the registered evaluators change */
+    private volatile OsgiInstallerHealthCheckConfiguration configuration;
+
+    /** the compiled configuration, replaced as a whole on every configuration change */
+    private volatile Rules rules;
+
+    /** chosen once per configuration, holds everything reused by later executions */
+    private volatile EvaluationStrategy strategy;
+
+    /** the index of the installer state last inspected, only built on demand */
+    private volatile EntityIndex entityIndex = EntityIndex.EMPTY;
+
+    /** incremented on every installer event */
+    private final AtomicLong installerEpoch = new AtomicLong();
+
+    /** the installer state last retrieved from the {@link #infoProvider} */
+    private volatile RetrievedState retrievedState;
+
+    private final ExecutionMetrics metrics = new ExecutionMetrics();
+
+    /** gives the evaluation strategies access to the installer state and the (parallel) evaluation of groups */
+    private final EvaluationStrategy.Context strategyContext = new EvaluationStrategy.Context() {
+        @Override
+        public List<ResourceGroup> retrieveInstalledResources(ExecutionSample sample) {
+            return OsgiInstallerHealthCheck.this.retrieveInstalledResources(sample);
+        }
+
+        @Override
+        public List<GroupVerdict> evaluateGroups(List<ResourceGroup> groups, Rules rules, ExecutionSample sample) {
+            return OsgiInstallerHealthCheck.this.evaluateGroups(groups, rules, sample);
+        }
+
+        @Override
+        public long getInstallerEpoch() {
+            return installerEpoch.get();
+        }
+    };
+
+    /** the time source for the time budget and the age of background scans, only replaced by tests */
+    private LongSupplier nanoClock = System::nanoTime;
+
+    /** lets concurrent executions share one evaluation */
+    private final SingleFlight<Result> singleFlight = new SingleFlight<>(metrics::joinedExecution);
+
+    private ServiceRegistration<InstallerHealthCheckMetrics> metricsRegistration;
+
+    private ServiceRegistration<DynamicMBean> metricsMBeanRegistration;
+
+    /** the name with which the metrics are registered */
+    private String metricsName;
+
+    /** only set in case status-only tags are configured */
+    private ServiceRegistration<HealthCheck> statusOnlyRegistration;
+
+    /** the name and tags with which the status-only health check is registered */
+    private List<String> statusOnlyProperties = Collections.emptyList();
+
+    private BundleContext bundleContext;
+
+    /** only set in case parallel evaluation is enabled */
+    private volatile ParallelGroupEvaluator parallelEvaluator;
+
+    private final ConvergenceTracker convergenceTracker = new ConvergenceTracker(() -> infoProvider.getInstallationState(), this::evaluateShared);
+
+    /** only set in case background scanning is enabled */
+    private volatile BackgroundScanner backgroundScanner;
+
+    /** creates the executor of each background scanner, only replaced by tests */
+    private Supplier<ScheduledExecutorService> backgroundScanExecutors = BackgroundScanner::newExecutor;
+
+    /** only set in case the bundle states are verified */
+    private volatile BundleStateVerifier bundleStateVerifier;
+
+    private static final String INTERRUPTED_MESSAGE = "The evaluation of the installer state has been interrupted (e.g. because the health check timed out), therefore the result is incomplete.";
+
     private static final String DOCUMENTATION_URL = "https://sling.apache.org/documentation/bundles/osgi-installer.html#health-check";
 
     @Activate
+    protected void activate(BundleContext bundleContext, OsgiInstallerHealthCheckConfiguration configuration) {
+        this.bundleContext = bundleContext;
+        configure(configuration);
+    }
+
     @Modified
-    protected void configure(OsgiInstallerHealthCheckConfiguration configuration) {
+    protected synchronized void configure(OsgiInstallerHealthCheckConfiguration configuration) {
+        final Rules newRules = Rules.compile(configuration, typeEvaluators.getEvaluatorsByType());
         this.configuration = configuration;
+        final ParallelGroupEvaluator previousEvaluator = parallelEvaluator;
+        if (previousEvaluator == null || previousEvaluator.getParallelism() != newRules.getParallelism()) {
+            parallelEvaluator = newRules.getParallelism() > 0 ? new ParallelGroupEvaluator(newRules.getParallelism()) : null;
+            if (previousEvaluator != null) {
+                previousEvaluator.shutdown();
+            }
+        }
+        final Rules previousRules = rules;
+        rules = newRules;
+        strategy = createStrategy(newRules);
+        final SharedInstallerStateEvaluator shared = sharedEvaluator;
+        if (shared != null && !newRules.isSharedEvaluation()) {
+            shared.unregister(this);
+        }
+        if (bundleContext != null && !newRules.getName().equals(metricsName)) {
+            unregisterMetrics();
+            registerMetrics(bundleContext, newRules.getName());
+        }
+        if (bundleContext != null) {
+            updateStatusOnlyHealthCheck(bundleContext, newRules);
+            updateBundleStateVerifier(bundleContext, newRules);
+        }
+        // the scanner reads the rules, therefore it must be (re)started afterwards
+        final BackgroundScanner previousScanner = backgroundScanner;
+        if (previousScanner == null || previousScanner.getIntervalMs() != newRules.getBackgroundScanIntervalMs()) {
+            backgroundScanner = newRules.getBackgroundScanIntervalMs() > 0 ? new BackgroundScanner(newRules.getBackgroundScanIntervalMs(), this::evaluateShared, backgroundScanExecutors.get(), nanoClock) : null;
+            if (previousScanner != null) {
+                previousScanner.shutdown();
+            }
+        } else if (previousRules != newRules) {
+            previousScanner.requestScan();
+        }
+    }
+
+    /**
+     * @param newRules
+     *            the compiled configuration, which does not contain any conflicting options
+     * @return the strategy for evaluating the installer state with the given rules, without any previous verdicts
+     */
+    private EvaluationStrategy createStrategy(Rules newRules) {
+        if (newRules.isEventDrivenEvaluation()) {
+            return new EventDrivenEvaluation(newRules, strategyContext, this::onInstallerChange);
+        }
+        if (newRules.isSharedEvaluation()) {
+            return new SharedEvaluation(newRules, strategyContext, () -> sharedEvaluator, this);
+        }
+        if (newRules.getTimeBudgetMs() > 0) {
+            return new BudgetedEvaluation(newRules, strategyContext, nanoClock);
+        }
+        if (newRules.isMemoizeResults()) {
+            return new MemoizingEvaluation(newRules, strategyContext, metrics);
+        }
+        return new FullEvaluation(newRules, strategyContext);
+    }
+
+    @Reference(cardinality = ReferenceCardinality.MULTIPLE, policy = ReferencePolicy.DYNAMIC, policyOption = ReferencePolicyOption.GREEDY)
+    protected void bindResourceTypeEvaluator(ResourceTypeEvaluator evaluator, Map<String, Object> properties) {
+        typeEvaluators.add(evaluator, properties);
+        applyTypeEvaluators();
+    }
+
+    protected void unbindResourceTypeEvaluator(ResourceTypeEvaluator evaluator) {
+        typeEvaluators.remove(evaluator);
+        applyTypeEvaluators();
+    }
+
+    /**
+     * Compiles the last configuration again, so that all verdicts calculated with the previous evaluators are
+     * discarded. Does nothing once deactivated.
+     */
+    private synchronized void applyTypeEvaluators() {
+        final OsgiInstallerHealthCheckConfiguration currentConfiguration = configuration;
+        if (currentConfiguration != null) {
+            configure(currentConfiguration);
+        }
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        synchronized (this) {
+            // evaluators being unbound afterwards must not lead to a new configuration
+            configuration = null;
+        }
+        unregisterMetrics();
+        if (statusOnlyRegistration != null) {
+            statusOnlyRegistration.unregister();
+            statusOnlyRegistration = null;
+        }
+        final SharedInstallerStateEvaluator shared = sharedEvaluator;
+        if (shared != null) {
+            shared.unregister(this);
+        }
+        convergenceTracker.close();
+        final BackgroundScanner scanner = backgroundScanner;
+        backgroundScanner = null;
+        if (scanner != null) {
+            scanner.shutdown();
+        }
+        final ParallelGroupEvaluator evaluator = parallelEvaluator;
+        parallelEvaluator = null;
+        if (evaluator != null) {
+            evaluator.shutdown();
+        }
+        final BundleStateVerifier verifier = bundleStateVerifier;
+        bundleStateVerifier = null;
+        if (verifier != null) {
+            verifier.close();
+        }
+    }
+
+    /**
+     * Registers the metrics as service and as MBean (picked up by the JMX whiteboard).
+     *
+     * @param bundleContext the bundle context to register with
+     * @param name the name of this health check
+     */
+    private void registerMetrics(BundleContext bundleContext, String name) {
+        metricsName = name;
+        final Dictionary<String, Object> properties = new Hashtable<>();
+        properties.put(HealthCheck.NAME, name);
+        metricsRegistration = bundleContext.registerService(InstallerHealthCheckMetrics.class, metrics, properties);
         try {
-            skipEntityIdsWithVersions = parseEntityIdsWithVersions(configuration.skipEntityIds());
-        } catch (IllegalArgumentException e) {
-            throw new IllegalStateException("Invalid configuration in 'skipEntityIds': " + e.getLocalizedMessage(), e);
+            final DynamicMBean mbean = new StandardMBean(metrics, InstallerHealthCheckMetrics.class);
+            final Dictionary<String, Object> mbeanProperties = new Hashtable<>();
+            mbeanProperties.put("jmx.objectname", "org.apache.sling.installer.hc:type=Metrics,name=" + ObjectName.quote(name));
+            metricsMBeanRegistration = bundleContext.registerService(DynamicMBean.class, mbean, mbeanProperties);
+        } catch (NotCompliantMBeanException e) {
+            LOG.warn("Cannot register the health check metrics as MBean", e);
         }
-        
     }
 
-    static Map<String, List<Version>> parseEntityIdsWithVersions(String[] entityIdsAndVersions) throws IllegalArgumentException {
-        Map<String, List<Version>> entityIdsWithVersions = new HashMap<>();
-        if (entityIdsAndVersions != null) {
-            for (String entityIdAndVersion : entityIdsAndVersions) {
-                String[] parts = entityIdAndVersion.split(" ", 2);
-                final String entityId = parts[0];
-                final Version version;
-                if (parts.length > 1) {
-                    version = Version.parseVersion(parts[1]);
-                } else {
-                    version = null;
-                }
-                // does an entry with the same id already exist?
-                if (entityIdsWithVersions.containsKey(entityId)) {
-                    
-                    List<Version> versions = entityIdsWithVersions.get(entityId);
-                    // previous entry contained no version?
-                    if (versions == null) {
-                        throw new IllegalArgumentException("One entry with 'id' " + entityId + " contained no version limitation and there was another entry with the same id. This is an invalid combination. Please only list the same id more than once if different versions are given as well.");
-                    }
-                    versions.add(version);
-                } else {
-                    final List<Version> versions;
-                    if (version == null) {
-                        versions = null;
-                    } else {
-                        versions = new ArrayList<>(Collections.singletonList(version));
-                    }
-                    entityIdsWithVersions.put(entityId, versions);
+    /**
+     * Registers the status-only health check with the configured tags, unless it is already registered with the same
+     * name and tags.
+     *
+     * @param bundleContext the bundle context to register with
+     * @param newRules the new rules
+     */
+    private void updateStatusOnlyHealthCheck(BundleContext bundleContext, Rules newRules) {
+        final String[] tags = newRules.getStatusOnlyTags();
+        final List<String> properties = new ArrayList<>();
+        if (tags.length > 0) {
+            properties.add(newRules.getName());
+            Collections.addAll(properties, tags);
+        }
+        if (properties.equals(statusOnlyProperties)) {
+            return;
+        }
+        if (statusOnlyRegistration != null) {
+            statusOnlyRegistration.unregister();
+            statusOnlyRegistration = null;
+        }
+        statusOnlyProperties = properties;
+        if (tags.length > 0) {
+            final Dictionary<String, Object> serviceProperties = new Hashtable<>();
+            serviceProperties.put(HealthCheck.NAME, newRules.getName() + " (status only)");
+            serviceProperties.put(HealthCheck.TAGS, tags);
+            statusOnlyRegistration = bundleContext.registerService(HealthCheck.class, (HealthCheck) this::executeStatusOnly, serviceProperties);
+        }
+    }
+
+    /**
+     * Starts tracking the bundles in case the bundle states are to be verified and stops it otherwise.
+     *
+     * @param bundleContext the bundle context to track the bundles with
+     * @param newRules the new rules
+     */
+    private void updateBundleStateVerifier(BundleContext bundleContext, Rules newRules) {
+        final BundleStateVerifier previousVerifier = bundleStateVerifier;
+        if (newRules.isVerifyBundleStates() && previousVerifier == null) {
+            final BundleStateVerifier verifier = new BundleStateVerifier(bundleContext);
+            verifier.open();
+            bundleStateVerifier = verifier;
+        } else if (!newRules.isVerifyBundleStates() && previousVerifier != null) {
+            bundleStateVerifier = null;
+            previousVerifier.close();
+        }
+    }
+
+    private void unregisterMetrics() {
+        if (metricsMBeanRegistration != null) {
+            metricsMBeanRegistration.unregister();
+            metricsMBeanRegistration = null;
+        }
+        if (metricsRegistration != null) {
+            metricsRegistration.unregister();
+            metricsRegistration = null;
+        }
+    }
+
+    @Override
+    public void onEvent(InstallationEvent event) {
+        installerEpoch.incrementAndGet();
+        final EvaluationStrategy currentStrategy = strategy;
+        if (currentStrategy != null) {
+            currentStrategy.onEvent(event);
+        }
+        convergenceTracker.onEvent(event);
+    }
+
+    /**
+     * Called for the first installer event after an event-driven evaluation. In case background scanning is enabled,
+     * the affected groups are evaluated again once the debounce delay has passed, together with all groups affected by
+     * further events within that delay.
+     */
+    private void onInstallerChange() {
+        final BackgroundScanner scanner = backgroundScanner;
+        final Rules currentRules = rules;
+        if (scanner != null && currentRules != null && currentRules.isEventDrivenEvaluation()) {
+            scanner.requestScan(currentRules.getEventDebounceMs());
+        }
+    }
+
+    @Override
+    public Result execute() {
+        final BackgroundScanner scanner = backgroundScanner;
+        if (scanner != null) {
+            return scanner.getLatestResult(rules.getBackgroundScanMaxAgeMs());
+        }
+        try {
+            return evaluateShared();
+        } catch (CancellationException e) {
+            LOG.debug("Evaluation has been interrupted", e);
+            return new Result(Result.Status.TEMPORARILY_UNAVAILABLE, INTERRUPTED_MESSAGE);
+        }
+    }
+
+    /**
+     * Only determines the status: stops at the first group with a resource which is not installed correctly and does
+     * not format any messages. Executions are not recorded in the metrics.
+     *
+     * @return the result with one of the {@link Rules#getStatusOnlyResult(Result.Status) predefined messages}
+     */
+    Result executeStatusOnly() {
+        final Rules currentRules = rules;
+        if (backgroundScanner != null || currentRules.isEventDrivenEvaluation() || currentRules.getTimeBudgetMs() > 0
+                || currentRules.isVerifyBundleStates()) {
+            // the result is usually available without evaluating all groups, its messages are never rendered
+            return currentRules.getStatusOnlyResult(execute().getStatus());
+        }
+        final List<ResourceGroup> groups = retrieve();
+        try {
+            for (final ResourceGroup group : groups) {
+                if (!evaluateGroup(group, currentRules).getFindings().isEmpty()) {
+                    return currentRules.getStatusOnlyResult(currentRules.getSeverity());
                 }
-                
             }
+        } catch (CancellationException e) {
+            return currentRules.getStatusOnlyResult(Result.Status.TEMPORARILY_UNAVAILABLE);
         }
-        return entityIdsWithVersions;
+        return currentRules.getStatusOnlyResult(Result.Status.OK);
     }
 
     @Override
-    public Result execute() {
-        InstallationState installationState = infoProvider.getInstallationState();
-        FormattingResultLog hcLog = new FormattingResultLog();
+    public CompletableFuture<Result> converged() {
+        return convergenceTracker.converged();
+    }
+
+    @Override
+    public Result awaitConverged(Duration timeout) throws InterruptedException, TimeoutException {
+        try {
+            return converged().get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("Could not evaluate the converged installer state", cause);
+        }
+    }
+
+    @Override
+    public EntityDecision inspect(String entityId) {
+        final Rules currentRules = rules;
+        final ResourceGroup group = currentEntityIndex().get(entityId);
+        return group != null ? explainGroup(group, currentRules) : null;
+    }
+
+    @Override
+    public List<EntityDecision> inspectByPrefix(String entityIdPrefix, int maxResults) {
+        final Rules currentRules = rules;
+        final List<EntityDecision> decisions = new ArrayList<>();
+        for (final ResourceGroup group : currentEntityIndex().getByPrefix(entityIdPrefix, maxResults)) {
+            decisions.add(explainGroup(group, currentRules));
+        }
+        return decisions;
+    }
 
-        int numCheckedConfigurationGroups = 0;
-        int numCheckedBundleGroups = 0;
+    /**
+     * @return the index of the current installer state, only built again after an installer event
+     */
+    private EntityIndex currentEntityIndex() {
+        final List<ResourceGroup> groups = retrieveUnlessUnchanged();
+        EntityIndex index = entityIndex;
+        if (!index.isIndexOf(groups)) {
+            index = EntityIndex.of(groups);
+            entityIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * @return the installer state last retrieved from the {@link #infoProvider} (e.g. by the last evaluation) in case
+     *         there has not been any installer event since, otherwise a new copy
+     */
+    private List<ResourceGroup> retrieveUnlessUnchanged() {
+        final RetrievedState previous = retrievedState;
+        if (previous != null && previous.epoch == installerEpoch.get()) {
+            return previous.groups;
+        }
+        return retrieve();
+    }
+
+    /**
+     * @return the groups of a new copy of the installer state, which is remembered together with the installer epoch
+     */
+    private List<ResourceGroup> retrieve() {
+        // read the epoch before retrieving the state, so that concurrent events lead to another retrieval
+        final long epoch = installerEpoch.get();
+        final List<ResourceGroup> groups = infoProvider.getInstallationState().getInstalledResources();
+        retrievedState = new RetrievedState(epoch, groups);
+        return groups;
+    }
+
+    /**
+     * Evaluates the current installer state, unless a concurrent evaluation is running whose result is shared then.
+     *
+     * @return the result of the health check
+     * @throws CancellationException in case the evaluation has been interrupted
+     */
+    private Result evaluateShared() {
+        try {
+            return singleFlight.run(this::evaluate);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Result(Result.Status.TEMPORARILY_UNAVAILABLE, "Interrupted while waiting for a concurrent execution of the health check.");
+        }
+    }
+
+    /**
+     * Evaluates the current installer state and records the metrics (and the flight recorder event) for it.
+     *
+     * @return the result of the health check
+     */
+    private Result evaluate() {
+        final Object event = FlightRecorderEvents.INSTANCE.beginExecution();
+        final ExecutionSample sample = new ExecutionSample();
+        // use the same strategy and rules for the whole execution
+        final EvaluationStrategy currentStrategy = strategy;
+        final Rules currentRules = currentStrategy.getRules();
+        Result result = null;
+        try {
+            final CachedResult evaluation = currentStrategy.evaluate(sample);
+            sample.reported(evaluation.getResourcesSkipped(), evaluation.getResourcesFailing(), evaluation.getResourcesIgnored());
+            result = evaluation.getResult();
+            final BundleStateVerifier verifier = bundleStateVerifier;
+            if (verifier != null && currentRules.isVerifyBundleStates()) {
+                // separate stage on the same groups, so that the verdicts cached above only depend on the installer state
+                result = verifier.verify(result, evaluation.getGroups(), currentRules);
+            }
+            return result;
+        } finally {
+            metrics.record(sample);
+            FlightRecorderEvents.INSTANCE.commitExecution(event, currentRules.getName(), sample, result != null ? result.getStatus() : null);
+        }
+    }
+
+    /**
+     * @return the metrics of all executions of this health check
+     */
+    ExecutionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Always retrieves a new copy of the installer state, only the shared evaluation uses the shared snapshots.
+     *
+     * @param sample
+     *            the sample of the current execution
+     * @return the installed resources
+     */
+    private List<ResourceGroup> retrieveInstalledResources(ExecutionSample sample) {
+        final long startTime = System.nanoTime();
+        List<ResourceGroup> groups = retrieve();
+        sample.addStateRetrievalNanos(System.nanoTime() - startTime);
+        sample.scanned(groups);
+        return groups;
+    }
+
+    /**
+     * Evaluates all given groups, in parallel if enabled and the number of groups exceeds the configured threshold.
+     *
+     * @param groups
+     *            the resource groups to evaluate
+     * @param currentRules
+     *            the rules to apply
+     * @param sample
+     *            the sample of the current execution
+     * @return the verdicts in the order of the given groups
+     */
+    private List<GroupVerdict> evaluateGroups(List<ResourceGroup> groups, Rules currentRules, ExecutionSample sample) {
+        sample.evaluated(groups.size());
+        final ParallelGroupEvaluator evaluator = parallelEvaluator;
+        if (evaluator != null && groups.size() >= currentRules.getParallelEvaluationThreshold()) {
+            try {
+                return evaluator.evaluate(groups, currentRules);
+            } catch (RejectedExecutionException e) {
+                LOG.debug("Parallel evaluation not possible as the pool has been shut down, evaluating sequentially", e);
+            }
+        }
+        List<GroupVerdict> verdicts = new ArrayList<>(groups.size());
         // go through all resource groups of the OSGi Installer
-        for (final ResourceGroup group : installationState.getInstalledResources()) {
-            String type = evaluateGroup(group, hcLog);
-            switch (type) {
-            case InstallableResource.TYPE_CONFIG:
-                numCheckedConfigurationGroups++;
-                break;
+        for (final ResourceGroup group : groups) {
+            verdicts.add(evaluateGroup(group, currentRules));
+        }
+        return verdicts;
+    }
+
+    private static final class RetrievedState {
+        private final long epoch;
+        private final List<ResourceGroup> groups;
+
+        RetrievedState(long epoch, List<ResourceGroup> groups) {
+            this.epoch = epoch;
+            this.groups = groups;
+        }
+    }
+
+    static String getEntityId(ResourceGroup group) {
+        List<Resource> resources = group.getResources();
+        return resources.isEmpty() ? null : resources.get(0).getEntityId();
+    }
+
+    /**
+     * Calculates the status right away, but defers formatting the messages until the result's entries are requested.
+     *
+     * @param verdicts
+     *            the verdicts of all groups
+     * @param currentRules
+     *            the rules to apply
+     * @return the result
+     */
+    static Result buildResult(List<GroupVerdict> verdicts, Rules currentRules) {
+        // bundles and configurations are always listed, other types only if there is at least one group
+        final Map<String, int[]> numCheckedGroupsByType = new LinkedHashMap<>();
+        numCheckedGroupsByType.put(InstallableResource.TYPE_BUNDLE, new int[1]);
+        numCheckedGroupsByType.put(InstallableResource.TYPE_CONFIG, new int[1]);
+        boolean hasFindings = false;
+        String previousType = null;
+        int[] numCheckedGroups = null;
+        for (final GroupVerdict verdict : verdicts) {
+            hasFindings |= !verdict.getFindings().isEmpty();
+            final String type = verdict.getType();
+            if (type.isEmpty()) {
+                continue;
+            }
+            // groups of the same type usually follow each other
+            if (!type.equals(previousType)) {
+                numCheckedGroups = numCheckedGroupsByType.computeIfAbsent(type, t -> new int[1]);
+                previousType = type;
+            }
+            numCheckedGroups[0]++;
+        }
+        final Result.Status severity = currentRules.getSeverity();
+        final Result.Status status = hasFindings ? severity : Result.Status.OK;
+        final int maxReportedResources = currentRules.getMaxReportedResources();
+        return new LazyResult(status, () -> renderResultLog(verdicts, numCheckedGroupsByType, maxReportedResources, severity));
+    }
+
+    /**
+     * @param numCheckedGroupsByType the number of checked groups per type
+     * @return the summary of the checked groups, e.g. "2 OSGi bundle, 1 configuration and 3 file"
+     */
+    private static String summarizeCheckedGroups(Map<String, int[]> numCheckedGroupsByType) {
+        final StringBuilder summary = new StringBuilder();
+        int numRemainingTypes = numCheckedGroupsByType.size();
+        for (final Map.Entry<String, int[]> entry : numCheckedGroupsByType.entrySet()) {
+            if (summary.length() > 0) {
+                summary.append(numRemainingTypes == 1 ? " and " : ", ");
+            }
+            numRemainingTypes--;
+            summary.append(entry.getValue()[0]).append(' ');
+            switch (entry.getKey()) {
             case InstallableResource.TYPE_BUNDLE:
-                numCheckedBundleGroups++;
+                summary.append("OSGi bundle");
                 break;
+            case InstallableResource.TYPE_CONFIG:
+                summary.append("configuration");
+                break;
+            default:
+                summary.append(entry.getKey());
+            }
+        }
+        return summary.toString();
+    }
+
+    private static ResultLog renderResultLog(List<GroupVerdict> verdicts, Map<String, int[]> numCheckedGroupsByType, int maxReportedResources, Result.Status severity) {
+        FormattingResultLog hcLog = new FormattingResultLog();
+        if (maxReportedResources == 0) {
+            for (final GroupVerdict verdict : verdicts) {
+                for (final Finding finding : verdict.getFindings()) {
+                    finding.report(hcLog, severity);
+                }
             }
+        } else {
+            reportBounded(hcLog, verdicts, maxReportedResources, severity);
         }
-        hcLog.info("Checked {} OSGi bundle and {} configuration groups.", numCheckedBundleGroups, numCheckedConfigurationGroups);
+        hcLog.info("Checked {} groups.", summarizeCheckedGroups(numCheckedGroupsByType));
         if (hcLog.getAggregateStatus().ordinal() >= Result.Status.WARN.ordinal()) {
             hcLog.info("Refer to the OSGi installer's documentation page at {} for further details on how to fix those issues.", DOCUMENTATION_URL);
         }
-        return new Result(hcLog);
+        return hcLog;
+    }
+
+    /**
+     * Reports the findings with the highest priority (in the order of the groups within the same priority) and
+     * summarizes the remaining ones by type and state in one entry. Only ever keeps one counter per type and state in
+     * addition to the reported entries.
+     *
+     * @param hcLog
+     *            the log to add to
+     * @param verdicts
+     *            the verdicts of all groups
+     * @param maxReportedResources
+     *            the maximum number of findings which are reported with a dedicated entry, greater than 0
+     * @param severity
+     *            the status of the reported entries
+     */
+    private static void reportBounded(FormattingResultLog hcLog, List<GroupVerdict> verdicts, int maxReportedResources, Result.Status severity) {
+        // in the order of the priorities, as the findings are visited in that order
+        final Map<String, int[]> numOmittedFindingsByLabel = new LinkedHashMap<>();
+        int numReportedFindings = 0;
+        int numOmittedTotal = 0;
+        for (int priority = 0; priority < Finding.NUM_PRIORITIES; priority++) {
+            for (final GroupVerdict verdict : verdicts) {
+                for (final Finding finding : verdict.getFindings()) {
+                    if (finding.getPriority() != priority) {
+                        continue;
+                    }
+                    if (numReportedFindings < maxReportedResources) {
+                        finding.report(hcLog, severity);
+                        numReportedFindings++;
+                    } else {
+                        numOmittedFindingsByLabel.computeIfAbsent(finding.getSummaryLabel(), label -> new int[1])[0]++;
+                        numOmittedTotal++;
+                    }
+                }
+            }
+        }
+        if (numOmittedTotal > 0) {
+            final StringBuilder summary = new StringBuilder();
+            for (final Map.Entry<String, int[]> entry : numOmittedFindingsByLabel.entrySet()) {
+                if (summary.length() > 0) {
+                    summary.append(", ");
+                }
+                summary.append(entry.getKey()).append(": ").append(entry.getValue()[0]);
+            }
+            Finding.report(hcLog, severity, "{} more resources are not installed correctly but are not listed, as only {} resources are reported individually ({}).",
+                    numOmittedTotal, maxReportedResources, summary);
+        }
     }
 
     /**
      * @param group
      *            the resource group to evaluate
-     * @param hcLog
-     *            the log to fill during the health check
-     * @return the type of resources in this group ("bundle" or "config") or empty string, if the group was not
-     *         considered by this health check
+     * @param rules
+     *            the rules to apply
+     * @return the verdict for this group, never {@code null}
+     */
+    static GroupVerdict evaluateGroup(ResourceGroup group, Rules rules) {
+        checkInterrupted();
+        final Object event = FlightRecorderEvents.INSTANCE.beginGroupEvaluation();
+        final GroupVerdict verdict = evaluateResources(group, rules, null);
+        FlightRecorderEvents.INSTANCE.commitGroupEvaluation(event, group);
+        return verdict;
+    }
+
+    /**
+     * Evaluates the given group and records all decisions taken. Only meant for diagnostics.
+     *
+     * @param group
+     *            the resource group to evaluate
+     * @param rules
+     *            the rules to apply
+     * @return the decision for this group
+     */
+    static EntityDecisionTrace explainGroup(ResourceGroup group, Rules rules) {
+        final EntityDecisionTrace trace = new EntityDecisionTrace(group, rules);
+        return trace.complete(evaluateResources(group, rules, trace));
+    }
+
+    /**
+     * @param group
+     *            the resource group to evaluate
+     * @param rules
+     *            the rules to apply
+     * @param trace
+     *            records the decisions, {@code null} for the regular evaluation
+     * @return the verdict for this group, never {@code null}
      */
-    private String evaluateGroup(ResourceGroup group, FormattingResultLog hcLog) {
+    private static GroupVerdict evaluateResources(ResourceGroup group, Rules rules, EntityDecisionTrace trace) {
+        // only allocated once there is something to report
+        List<Finding> findings = null;
+        int numSkippedResources = 0;
         Resource invalidResource = null;
         String resourceType = "";
+        ResourceTypeEvaluator evaluator = null;
         boolean isGroupRelevant = false;
         // go through all resources within the given group
         for (Resource resource : group.getResources()) {
             // check for the correct type
             resourceType = resource.getType();
-            switch (resourceType) {
-            case InstallableResource.TYPE_CONFIG:
-                if (!configuration.checkConfigurations()) {
-                    LOG.debug("Skip resource '{}', configuration checks are disabled", resource.getEntityId());
-                    return "";
-                }
-                break;
-            case InstallableResource.TYPE_BUNDLE:
-                if (!configuration.checkBundles()) {
-                    LOG.debug("Skip resource '{}', bundle checks are disabled", resource.getEntityId());
-                    return "";
+            evaluator = rules.getTypeEvaluator(resourceType);
+            if (evaluator == null) {
+                LOG.debug("Skip resource '{}' as resources of type {} are not checked", resource.getEntityId(), resourceType);
+                if (trace != null) {
+                    trace.notChecked(resource, rules.getReasonForUncheckedType(resourceType));
                 }
-                break;
-            default:
-                LOG.debug("Skip resource '{}' as it is neither a bundle nor a configuration but a {}",
-                        resource.getEntityId(), resourceType);
-                return "";
+                return verdict("", findings, numSkippedResources);
             }
-            if (Arrays.stream(configuration.urlPrefixes()).anyMatch(resource.getURL()::startsWith)) {
+            if (rules.getUrlPrefixMatcher().matches(resource.getURL())) {
                 isGroupRelevant = true;
-                switch (resource.getState()) {
-                case IGNORED: // means a considered resource was found and it is invalid
+                if (!evaluator.isInstalledCorrectly(resource)) {
+                    // means a considered resource was found and it is invalid
                     // still the other resources need to be evaluated
-                case INSTALL:
-                    if (!configuration.allowIgnoredArtifactsInGroup()) {
-                        reportInvalidResource(resource, resourceType, hcLog);
+                    if (!rules.isAllowIgnoredArtifactsInGroup()) {
+                        if (!isSkipped(resource, rules)) {
+                            findings = addFinding(findings, resource, resourceType, evaluator);
+                            if (trace != null) {
+                                trace.decide(resource, "Not installed correctly (" + resource.getState() + "), reported");
+                            }
+                        } else {
+                            numSkippedResources++;
+                            if (trace != null) {
+                                trace.skipped(resource);
+                            }
+                        }
                     } else {
                         if (invalidResource == null) {
                             invalidResource = resource;
                         }
+                        if (trace != null) {
+                            trace.decide(resource, "Not installed correctly (" + resource.getState() + "), "
+                                    + (invalidResource == resource ? "only reported in case no other resource of the group is installed" : "not reported as only the first such resource is reported"));
+                        }
+                    }
+                } else {
+                    if (trace != null) {
+                        trace.decide(resource, "Installed correctly (" + resource.getState() + ")"
+                                + (rules.isAllowIgnoredArtifactsInGroup() ? ", therefore the group is valid" : ""));
                     }
-                    break;
-                default:
-                    if (configuration.allowIgnoredArtifactsInGroup()) {
+                    if (rules.isAllowIgnoredArtifactsInGroup()) {
                         // means a considered resource was found and it is valid
                         // no need to evaluate other resources from this group
-                        return resourceType;
+                        return verdict(resourceType, findings, numSkippedResources);
                     }
                 }
             } else {
-                LOG.debug("Skipping resource '{}' as its URL is not starting with any of these prefixes '{}'", resource, (Object) configuration.urlPrefixes()); // NOSONAR java:S1905
+                LOG.debug("Skipping resource '{}' as its URL is not starting with any of these prefixes '{}'", resource, rules.getUrlPrefixMatcher());
+                if (trace != null) {
+                    trace.decide(resource, "Not considered as its URL does not start with any of the URL prefixes " + rules.getUrlPrefixMatcher());
+                }
             }
         }
-        if (invalidResource != null && configuration.allowIgnoredArtifactsInGroup()) {
-            reportInvalidResource(invalidResource, resourceType, hcLog);
+        if (invalidResource != null && rules.isAllowIgnoredArtifactsInGroup()) {
+            if (!isSkipped(invalidResource, rules)) {
+                findings = addFinding(findings, invalidResource, resourceType, evaluator);
+                if (trace != null) {
+                    trace.decide(invalidResource, "Not installed correctly (" + invalidResource.getState() + "), reported as no other resource of the group is installed");
+                }
+            } else {
+                numSkippedResources++;
+                if (trace != null) {
+                    trace.skipped(invalidResource);
+                }
+            }
         }
         
         // only return resource type if at least one resource in it belonged to a covered url prefix
-        return isGroupRelevant ? resourceType : "";
+        return verdict(isGroupRelevant ? resourceType : "", findings, numSkippedResources);
     }
 
-    private void reportInvalidResource(Resource invalidResource, String resourceType, FormattingResultLog hcLog) {
-        if (skipEntityIdsWithVersions.containsKey(invalidResource.getEntityId())) {
-            List<Version> versions = skipEntityIdsWithVersions.get(invalidResource.getEntityId());
-            if (versions != null) {
-                for (Version version : versions) {
-                    if (version.equals(invalidResource.getVersion())) {
-                        LOG.debug("Skipping not installed resource '{}' as its entity id and version is in the skip list", invalidResource);
-                        return;
-                    }
-                }
-            } else {
+    /**
+     * Called before every group is evaluated, so that an interrupted evaluation (e.g. as the health check executor
+     * has given up on it) stops right away instead of evaluating all remaining groups.
+     *
+     * @throws CancellationException in case the current thread has been interrupted
+     */
+    static void checkInterrupted() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Evaluation of the installer state has been interrupted");
+        }
+    }
+
+    static List<Finding> addFinding(List<Finding> findings, Resource resource, String resourceType, ResourceTypeEvaluator evaluator) {
+        List<Finding> list = findings == null ? new ArrayList<>(1) : findings;
+        list.add(new Finding(resource, resourceType, evaluator));
+        return list;
+    }
+
+    static GroupVerdict verdict(String type, List<Finding> findings, int numSkippedResources) {
+        if (findings == null && numSkippedResources == 0) {
+            return GroupVerdict.withoutFindings(type);
+        }
+        return new GroupVerdict(type, findings == null ? Collections.emptyList() : findings, numSkippedResources);
+    }
+
+    static boolean isSkipped(Resource invalidResource, Rules rules) {
+        SkipList skipList = rules.getSkipList();
+        if (skipList.isSkipped(invalidResource.getEntityId(), invalidResource.getVersion())) {
+            if (skipList.isAnyVersionSkipped(invalidResource.getEntityId())) {
                 LOG.debug("Skipping not installed resource '{}' as its entity id is in the skip list", invalidResource);
-                return;
+            } else {
+                LOG.debug("Skipping not installed resource '{}' as its entity id and version is in the skip list", invalidResource);
             }
+            return true;
         }
-        if (resourceType.equals(InstallableResource.TYPE_CONFIG)) {
-            hcLog.critical(
-                    "The installer state of the OSGi configuration resource '{}' is {}, config might have been manually overwritten!",
-                    invalidResource, invalidResource.getState());
-        } else {
-            hcLog.critical(
-                    "The installer state of the OSGi bundle resource '{}' is {}, probably because a later or the same version of that bundle is already installed!",
-                    invalidResource, invalidResource.getState());
-        }
+        return false;
     }
 }
@@ -19,15 +19,23 @@ package org.apache.sling.installer.hc;
 
 import org.osgi.service.metatype.annotations.AttributeDefinition;
 import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.osgi.service.metatype.annotations.Option;
 
 import static org.apache.sling.installer.hc.OsgiInstallerHealthCheck.HC_NAME;
 
 @ObjectClassDefinition(
     name = HC_NAME,
-    description = "Checks that all OSGi configurations/bundles are successfully installed by the OSGi Installer (and are not skipped for some reason)."
+    description = "Checks that all OSGi configurations/bundles are successfully installed by the OSGi Installer (and are not skipped for some reason). There may be multiple configurations with different URL prefixes, severities and tags, which can be evaluated from the same traversal of the installer state."
 )
 @interface OsgiInstallerHealthCheckConfiguration {
 
+    @AttributeDefinition(
+        name = "Name",
+        description = "The name of this health check. Must be unique in case there are multiple configurations, as it is also used for the metrics."
+    )
+    @SuppressWarnings("java:S100")
+    String hc_name() default HC_NAME;
+
     @AttributeDefinition(
         name = "Tags",
         description = "Tags with which this healthcheck is associated"
@@ -35,12 +43,28 @@ import static org.apache.sling.installer.hc.OsgiInstallerHealthCheck.HC_NAME;
     @SuppressWarnings("java:S100")
     String[] hc_tags() default {"installer", "osgi"};
 
+    @AttributeDefinition(
+        name = "Status-only tags",
+        description = "If not empty, an additional lightweight health check with the given tags is registered (named like this one with suffix ' (status only)'). It only reports the status (e.g. for readiness probes): it stops at the first resource which is not installed correctly and does not generate any messages."
+    )
+    String[] statusOnlyTags();
+
     @AttributeDefinition(
         name = "URL Prefixes to consider",
         description = "Only those OSGi configurations/bundles whose location are starting with one of the given URL prefixes are checked (whether they are installed correctly). Open /system/console/osgi-installer for a list of valid prefixes."
     )
     String[] urlPrefixes() default "jcrinstall:/apps/";
 
+    @AttributeDefinition(
+        name = "Severity",
+        description = "The status reported in case some OSGi configurations/bundles are not installed correctly.",
+        options = {
+            @Option(label = "Critical", value = "CRITICAL"),
+            @Option(label = "Warning", value = "WARN")
+        }
+    )
+    String severity() default "CRITICAL";
+
     @AttributeDefinition(
         name = "Check Bundles",
         description = "If enabled bundles are checked (restricted to the ones matching one of the prefixes)"
@@ -61,8 +85,74 @@ import static org.apache.sling.installer.hc.OsgiInstallerHealthCheck.HC_NAME;
 
     @AttributeDefinition(
         name = "Skip entity ids",
-        description = "The given entity ids should be skipped for the health check. Each entry has the format '<entity id> [<version>]'."
+        description = "The given entity ids should be skipped for the health check. Each entry has the format '<entity id> [<version>|<version range>]', e.g. 'bundle:foo 1.0.0' or 'bundle:foo [1.0,2.0)'. Without version all versions are skipped. Entries for the same entity id must not overlap."
     )
     String[] skipEntityIds();
 
+    @AttributeDefinition(
+        name = "Event-driven evaluation",
+        description = "If enabled the result is only calculated again after the OSGi installer signalled a change via an installation event. Only the groups affected by those events are evaluated again, unless the events do not allow to tell which groups are affected. Must not be combined with 'Shared evaluation', 'Memoize results' or a time budget."
+    )
+    boolean eventDrivenEvaluation() default false;
+
+    @AttributeDefinition(
+        name = "Shared evaluation",
+        description = "If enabled the installer state is evaluated in one traversal together with all other configurations which have this option enabled, based on the shared snapshots of the installer state (which are only replaced after installer events unless configured otherwise). Must not be combined with event-driven evaluation, 'Memoize results', 'Parallelism' or a time budget, as the groups are not evaluated separately for this configuration."
+    )
+    boolean sharedEvaluation() default false;
+
+    @AttributeDefinition(
+        name = "Memoize results",
+        description = "If enabled a fingerprint over the installer state (entity id, URL, state, digest and version of all resources) is calculated on every execution. If it is equal to the one of the previous execution (and the state is confirmed to be equal) the previous result is returned without evaluating the groups again. Otherwise only the groups which have changed are evaluated again. Must not be combined with 'Shared evaluation' or event-driven evaluation."
+    )
+    boolean memoizeResults() default false;
+
+    @AttributeDefinition(
+        name = "Parallelism",
+        description = "The number of threads used to evaluate the resource groups in parallel. 0 disables the parallel evaluation. Only useful for installations with tens of thousands of resource groups. Must not be combined with 'Shared evaluation' or a time budget."
+    )
+    int parallelism() default 0;
+
+    @AttributeDefinition(
+        name = "Parallel evaluation threshold",
+        description = "The minimum number of resource groups for which the parallel evaluation is used (only relevant if 'Parallelism' is greater than 0)."
+    )
+    int parallelEvaluationThreshold() default 10000;
+
+    @AttributeDefinition(
+        name = "Maximum number of reported resources",
+        description = "The maximum number of resources which are reported with a dedicated entry. Bundles are reported before configurations and resources in state INSTALL before the ones in state IGNORED. All further resources are only summarized by type and state in one additional entry. 0 means no limit."
+    )
+    int maxReportedResources() default 0;
+
+    @AttributeDefinition(
+        name = "Background scan interval (ms)",
+        description = "If greater than 0 the installer state is evaluated periodically on a dedicated thread with the given delay between two scans and the health check only returns the result of the latest scan. 0 evaluates the installer state on every execution of the health check. Must not be combined with a time budget."
+    )
+    long backgroundScanIntervalInMs() default 0;
+
+    @AttributeDefinition(
+        name = "Maximum result age (ms)",
+        description = "Only relevant if 'Background scan interval' is greater than 0. If the result of the latest background scan is older than the given number of milliseconds, the health check reports at least a warning with the age of the result. 0 means no limit."
+    )
+    long backgroundScanMaxAgeInMs() default 60000;
+
+    @AttributeDefinition(
+        name = "Event debounce delay (ms)",
+        description = "Only relevant if both 'Event-driven evaluation' and background scanning are enabled. The first installer event after a scan triggers another scan after the given number of milliseconds. All events received until then are evaluated together, so there is at most one scan per delay, no matter how many events the installer emits."
+    )
+    long eventDebounceInMs() default 1000;
+
+    @AttributeDefinition(
+        name = "Time budget (ms)",
+        description = "If greater than 0 an execution of the health check stops evaluating groups once the given number of milliseconds has passed and the next execution continues with the next group. Until the first complete pass the status is TEMPORARILY_UNAVAILABLE, afterwards the result of the last complete pass is reported together with the progress of the current one. A pass is started again on the current installer state after every installer event. Must not be combined with 'Shared evaluation', event-driven evaluation, background scanning or 'Parallelism', as the groups are evaluated one after the other. 0 means no limit."
+    )
+    long timeBudgetInMs() default 0;
+
+    @AttributeDefinition(
+        name = "Verify bundle states",
+        description = "If enabled the bundles which are installed according to the OSGi installer are looked up in the framework as well. Bundles which are no longer installed (e.g. as they have been uninstalled manually) or which are not active (apart from fragments, lazily activated bundles and bundles which are not started on purpose, i.e. whose start level has not been reached yet or which are not persistently started) are reported, too."
+    )
+    boolean verifyBundleStates() default false;
+
 }
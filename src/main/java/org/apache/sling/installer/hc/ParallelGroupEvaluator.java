@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.sling.installer.api.info.ResourceGroup;
+
+/**
+ * Evaluates resource groups on a dedicated fork/join pool.
+ * The groups are split into ranges which are evaluated independently, each verdict is written to the index of its
+ * group. Therefore the returned verdicts are in the same order as the groups, exactly as with the sequential
+ * evaluation. In case the calling thread is interrupted, the workers stop evaluating further groups.
+ */
+final class ParallelGroupEvaluator {
+
+    /** the number of groups below which a range is no longer split */
+    static final int SEQUENTIAL_THRESHOLD = 256;
+
+    private final ForkJoinPool pool;
+
+    ParallelGroupEvaluator(int parallelism) {
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * @param groups the groups to evaluate
+     * @param rules the rules to apply
+     * @return the verdicts in the order of the given groups
+     * @throws CancellationException in case the calling thread has been interrupted while waiting for the workers
+     */
+    List<GroupVerdict> evaluate(List<ResourceGroup> groups, Rules rules) {
+        // copy to an array to allow for constant time access independent of the list implementation
+        final ResourceGroup[] groupArray = groups.toArray(new ResourceGroup[0]);
+        final GroupVerdict[] verdicts = new GroupVerdict[groupArray.length];
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        final ForkJoinTask<Void> task = pool.submit(new EvaluationTask(groupArray, verdicts, rules, 0, groupArray.length, cancelled));
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            cancelled.set(true);
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Parallel evaluation of the installer state has been interrupted");
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Parallel evaluation failed", cause);
+        }
+        return Arrays.asList(verdicts);
+    }
+
+    /**
+     * Lets the pool finish the currently running evaluations, but does not accept new ones.
+     */
+    void shutdown() {
+        pool.shutdown();
+    }
+
+    private static final class EvaluationTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final transient ResourceGroup[] groups;
+        private final transient GroupVerdict[] verdicts;
+        private final transient Rules rules;
+        private final int from;
+        private final int to;
+        private final transient AtomicBoolean cancelled;
+
+        EvaluationTask(ResourceGroup[] groups, GroupVerdict[] verdicts, Rules rules, int from, int to, AtomicBoolean cancelled) {
+            this.groups = groups;
+            this.verdicts = verdicts;
+            this.rules = rules;
+            this.from = from;
+            this.to = to;
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SEQUENTIAL_THRESHOLD) {
+                for (int i = from; i < to && !cancelled.get(); i++) {
+                    verdicts[i] = OsgiInstallerHealthCheck.evaluateGroup(groups[i], rules);
+                }
+            } else if (!cancelled.get()) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new EvaluationTask(groups, verdicts, rules, from, middle, cancelled),
+                        new EvaluationTask(groups, verdicts, rules, middle, to, cancelled));
+            }
+        }
+    }
+}
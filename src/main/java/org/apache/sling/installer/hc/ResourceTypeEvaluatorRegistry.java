@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.sling.installer.hc.api.ResourceTypeEvaluator;
+import org.osgi.framework.Constants;
+
+/**
+ * Keeps track of the registered {@link ResourceTypeEvaluator} services and determines the one to use per resource type
+ * (the one with the highest service ranking, in case of equal ranking the one registered first).
+ */
+final class ResourceTypeEvaluatorRegistry {
+
+    /** all registered evaluators with their service properties, guarded by this */
+    private final Map<ResourceTypeEvaluator, Map<String, Object>> registrations = new LinkedHashMap<>();
+
+    /** the evaluator to use per resource type, replaced as a whole on every change */
+    private volatile Map<String, ResourceTypeEvaluator> evaluatorsByType = Collections.emptyMap();
+
+    synchronized void add(ResourceTypeEvaluator evaluator, Map<String, Object> properties) {
+        registrations.put(evaluator, properties);
+        update();
+    }
+
+    synchronized void remove(ResourceTypeEvaluator evaluator) {
+        registrations.remove(evaluator);
+        update();
+    }
+
+    /**
+     * @return the evaluator to use per resource type (immutable)
+     */
+    Map<String, ResourceTypeEvaluator> getEvaluatorsByType() {
+        return evaluatorsByType;
+    }
+
+    private void update() {
+        final Map<String, ResourceTypeEvaluator> evaluators = new HashMap<>();
+        final Map<String, Integer> rankings = new HashMap<>();
+        for (final Map.Entry<ResourceTypeEvaluator, Map<String, Object>> registration : registrations.entrySet()) {
+            final int ranking = getRanking(registration.getValue());
+            for (final String type : getResourceTypes(registration.getValue())) {
+                final Integer previousRanking = rankings.get(type);
+                if (previousRanking == null || ranking > previousRanking) {
+                    evaluators.put(type, registration.getKey());
+                    rankings.put(type, ranking);
+                }
+            }
+        }
+        evaluatorsByType = Collections.unmodifiableMap(evaluators);
+    }
+
+    private static int getRanking(Map<String, Object> properties) {
+        final Object ranking = properties.get(Constants.SERVICE_RANKING);
+        return ranking instanceof Integer ? (Integer) ranking : 0;
+    }
+
+    private static String[] getResourceTypes(Map<String, Object> properties) {
+        final Object types = properties.get(ResourceTypeEvaluator.RESOURCE_TYPES);
+        if (types instanceof String) {
+            return new String[]{(String) types};
+        }
+        if (types instanceof String[]) {
+            return (String[]) types;
+        }
+        return new String[0];
+    }
+}
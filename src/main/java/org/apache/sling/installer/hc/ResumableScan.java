@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+import org.apache.sling.installer.api.info.ResourceGroup;
+
+/**
+ * A pass over all groups of one installer state which may be spread over several executions of the health check.
+ * Every call of {@link #advance(long, VerdictCache)} continues with the group at the cursor until the deadline has
+ * passed. Only accessed by one evaluation at a time.
+ */
+final class ResumableScan {
+
+    /** the number of groups evaluated between two checks of the deadline */
+    private static final int DEADLINE_CHECK_INTERVAL = 64;
+
+    private final Rules rules;
+    /** the installer epoch the groups have been retrieved in */
+    private final long installerEpoch;
+    private final List<ResourceGroup> groups;
+    /** the time source the deadline refers to */
+    private final LongSupplier nanoClock;
+    private final List<GroupVerdict> verdicts;
+    /** only calculated if results are memoized */
+    private final long[] groupFingerprints;
+    private int cursor;
+
+    /**
+     * @param rules the rules to apply
+     * @param installerEpoch the installer epoch read before the groups have been retrieved
+     * @param groups the groups to evaluate
+     * @param nanoClock the time source, usually {@link System#nanoTime()}
+     */
+    ResumableScan(Rules rules, long installerEpoch, List<ResourceGroup> groups, LongSupplier nanoClock) {
+        this.rules = rules;
+        this.installerEpoch = installerEpoch;
+        this.groups = groups;
+        this.nanoClock = nanoClock;
+        this.verdicts = new ArrayList<>(groups.size());
+        this.groupFingerprints = rules.isMemoizeResults() ? new long[groups.size()] : null;
+    }
+
+    /**
+     * Evaluates the groups starting at the cursor until either all groups have been evaluated or the deadline has
+     * passed. At least {@value #DEADLINE_CHECK_INTERVAL} groups are evaluated per call, so that every call makes some
+     * progress. The call completing the pass evaluates those groups again which have been evaluated by previous calls
+     * but whose verdicts must not be reused (see {@link Rules#isReusable(GroupVerdict)}).
+     *
+     * @param deadline
+     *            the value of the time source after which no further groups should be evaluated
+     * @param previousVerdicts
+     *            the verdicts of the last complete pass which are reused for groups whose fingerprint is unchanged
+     * @return the number of evaluated groups (excluding the ones whose verdict has been reused)
+     */
+    int advance(long deadline, VerdictCache previousVerdicts) {
+        final int resumedAt = cursor;
+        int numEvaluatedGroups = 0;
+        while (cursor < groups.size()) {
+            final ResourceGroup group = groups.get(cursor);
+            GroupVerdict verdict = null;
+            if (groupFingerprints != null) {
+                groupFingerprints[cursor] = StateFingerprint.of(group);
+                verdict = previousVerdicts.get(group, groupFingerprints[cursor]);
+            }
+            if (verdict == null) {
+                verdict = OsgiInstallerHealthCheck.evaluateGroup(group, rules);
+                numEvaluatedGroups++;
+            }
+            verdicts.add(verdict);
+            cursor++;
+            if (cursor % DEADLINE_CHECK_INTERVAL == 0 && nanoClock.getAsLong() - deadline > 0) {
+                break;
+            }
+        }
+        if (isComplete()) {
+            for (int i = 0; i < resumedAt; i++) {
+                if (!rules.isReusable(verdicts.get(i))) {
+                    verdicts.set(i, OsgiInstallerHealthCheck.evaluateGroup(groups.get(i), rules));
+                    numEvaluatedGroups++;
+                }
+            }
+        }
+        return numEvaluatedGroups;
+    }
+
+    boolean isComplete() {
+        return cursor == groups.size();
+    }
+
+    long getInstallerEpoch() {
+        return installerEpoch;
+    }
+
+    List<ResourceGroup> getGroups() {
+        return groups;
+    }
+
+    /**
+     * @return the index of the next group to evaluate
+     */
+    int getCursor() {
+        return cursor;
+    }
+
+    /**
+     * @return the verdicts of all groups before the cursor
+     */
+    List<GroupVerdict> getVerdicts() {
+        return verdicts;
+    }
+
+    /**
+     * @return the fingerprints of all groups before the cursor or {@code null} in case results are not memoized
+     */
+    long[] getGroupFingerprints() {
+        return groupFingerprints;
+    }
+}
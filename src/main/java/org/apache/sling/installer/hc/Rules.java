@@ -0,0 +1,385 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.felix.hc.api.Result;
+import org.apache.sling.installer.api.InstallableResource;
+import org.apache.sling.installer.hc.api.ResourceTypeEvaluator;
+
+/**
+ * Immutable, precompiled form of the {@link OsgiInstallerHealthCheckConfiguration}.
+ * A new instance is created for every configuration change so that an execution always sees a consistent set of
+ * rules and never needs to call the (reflection based) configuration proxy.
+ */
+final class Rules {
+
+    private final String name;
+    private final Result.Status severity;
+    private final String[] statusOnlyTags;
+    private final Map<Result.Status, Result> statusOnlyResults = new EnumMap<>(Result.Status.class);
+    private final boolean checkBundles;
+    private final boolean checkConfigurations;
+    private final boolean allowIgnoredArtifactsInGroup;
+    private final boolean eventDrivenEvaluation;
+    private final boolean sharedEvaluation;
+    private final boolean memoizeResults;
+    private final int parallelism;
+    private final int parallelEvaluationThreshold;
+    private final int maxReportedResources;
+    private final long backgroundScanIntervalMs;
+    private final long backgroundScanMaxAgeMs;
+    private final long eventDebounceMs;
+    private final long timeBudgetMs;
+    private final boolean verifyBundleStates;
+    private final UrlPrefixMatcher urlPrefixMatcher;
+    private final SkipList skipList;
+    /** the evaluators of all checked resource types */
+    private final Map<String, ResourceTypeEvaluator> typeEvaluators;
+
+    /** {@code true} in case none of the evaluators has been registered as service */
+    private final boolean onlyBuiltInTypeEvaluators;
+
+    private Rules(OsgiInstallerHealthCheckConfiguration configuration, Map<String, ResourceTypeEvaluator> registeredTypeEvaluators) {
+        name = isEmpty(configuration.hc_name()) ? OsgiInstallerHealthCheck.HC_NAME : configuration.hc_name();
+        severity = parseSeverity(configuration.severity());
+        statusOnlyTags = configuration.statusOnlyTags() == null ? new String[0] : configuration.statusOnlyTags().clone();
+        // created upfront as the status-only health check must not format any messages
+        for (final Result.Status status : Result.Status.values()) {
+            statusOnlyResults.put(status, new Result(status, "Status only, refer to the health check '" + name + "' for details."));
+        }
+        checkBundles = configuration.checkBundles();
+        checkConfigurations = configuration.checkConfigurations();
+        allowIgnoredArtifactsInGroup = configuration.allowIgnoredArtifactsInGroup();
+        eventDrivenEvaluation = configuration.eventDrivenEvaluation();
+        sharedEvaluation = configuration.sharedEvaluation();
+        memoizeResults = configuration.memoizeResults();
+        parallelism = Math.max(0, configuration.parallelism());
+        parallelEvaluationThreshold = configuration.parallelEvaluationThreshold();
+        maxReportedResources = Math.max(0, configuration.maxReportedResources());
+        backgroundScanIntervalMs = Math.max(0, configuration.backgroundScanIntervalInMs());
+        backgroundScanMaxAgeMs = Math.max(0, configuration.backgroundScanMaxAgeInMs());
+        eventDebounceMs = Math.max(0, configuration.eventDebounceInMs());
+        timeBudgetMs = Math.max(0, configuration.timeBudgetInMs());
+        verifyBundleStates = configuration.verifyBundleStates();
+        if (sharedEvaluation) {
+            checkSharedEvaluation();
+        }
+        if (timeBudgetMs > 0) {
+            checkTimeBudget();
+        }
+        if (eventDrivenEvaluation) {
+            checkEventDrivenEvaluation();
+        }
+        urlPrefixMatcher = UrlPrefixMatcher.compile(configuration.urlPrefixes());
+        try {
+            skipList = SkipList.parse(configuration.skipEntityIds());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("Invalid configuration in 'skipEntityIds': " + e.getLocalizedMessage(), e);
+        }
+        final Map<String, ResourceTypeEvaluator> evaluators = new HashMap<>(registeredTypeEvaluators);
+        evaluators.putIfAbsent(InstallableResource.TYPE_BUNDLE, InstallerStateEvaluator.BUNDLE);
+        evaluators.putIfAbsent(InstallableResource.TYPE_CONFIG, InstallerStateEvaluator.CONFIGURATION);
+        if (!checkBundles) {
+            evaluators.remove(InstallableResource.TYPE_BUNDLE);
+        }
+        if (!checkConfigurations) {
+            evaluators.remove(InstallableResource.TYPE_CONFIG);
+        }
+        typeEvaluators = Collections.unmodifiableMap(evaluators);
+        boolean onlyBuiltIn = true;
+        for (final ResourceTypeEvaluator evaluator : evaluators.values()) {
+            onlyBuiltIn &= evaluator instanceof InstallerStateEvaluator;
+        }
+        onlyBuiltInTypeEvaluators = onlyBuiltIn;
+    }
+
+    /**
+     * The shared traversal evaluates the groups for all configurations at once, therefore the options which
+     * influence how the groups of a single configuration are evaluated cannot be applied.
+     *
+     * @throws IllegalStateException in case any of those options is set
+     */
+    private void checkSharedEvaluation() {
+        final List<String> conflictingOptions = new ArrayList<>();
+        if (eventDrivenEvaluation) {
+            conflictingOptions.add("eventDrivenEvaluation");
+        }
+        if (memoizeResults) {
+            conflictingOptions.add("memoizeResults");
+        }
+        if (parallelism > 0) {
+            conflictingOptions.add("parallelism");
+        }
+        if (timeBudgetMs > 0) {
+            conflictingOptions.add("timeBudgetInMs");
+        }
+        rejectConflictingOptions("sharedEvaluation", conflictingOptions, "the groups are evaluated together with the other configurations");
+    }
+
+    /**
+     * A pass within the time budget is spread over several executions and evaluates the groups one after the other,
+     * therefore it cannot be combined with the options which decide on their own when and how the groups are
+     * evaluated.
+     *
+     * @throws IllegalStateException in case any of those options is set
+     */
+    private void checkTimeBudget() {
+        final List<String> conflictingOptions = new ArrayList<>();
+        if (backgroundScanIntervalMs > 0) {
+            conflictingOptions.add("backgroundScanIntervalInMs");
+        }
+        if (eventDrivenEvaluation) {
+            conflictingOptions.add("eventDrivenEvaluation");
+        }
+        if (parallelism > 0) {
+            conflictingOptions.add("parallelism");
+        }
+        rejectConflictingOptions("timeBudgetInMs", conflictingOptions, "the groups are evaluated sequentially, spread over several executions");
+    }
+
+    /**
+     * The event-driven evaluation reuses the verdicts of all groups which are not affected by installer events,
+     * which makes memoizing the results redundant.
+     *
+     * @throws IllegalStateException in case results are memoized as well
+     */
+    private void checkEventDrivenEvaluation() {
+        rejectConflictingOptions("eventDrivenEvaluation", memoizeResults ? Collections.singletonList("memoizeResults") : Collections.emptyList(),
+                "the verdicts of unchanged groups are reused anyhow");
+    }
+
+    private static void rejectConflictingOptions(String option, List<String> conflictingOptions, String reason) {
+        if (!conflictingOptions.isEmpty()) {
+            throw new IllegalStateException("Invalid configuration in '" + option + "': Cannot be combined with " + conflictingOptions + " as " + reason);
+        }
+    }
+
+    private static Result.Status parseSeverity(String value) {
+        if (isEmpty(value)) {
+            return Result.Status.CRITICAL;
+        }
+        if (value.equals(Result.Status.CRITICAL.name())) {
+            return Result.Status.CRITICAL;
+        }
+        if (value.equals(Result.Status.WARN.name())) {
+            return Result.Status.WARN;
+        }
+        throw new IllegalStateException("Invalid configuration in 'severity': Must be either CRITICAL or WARN but is " + value);
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.isEmpty();
+    }
+
+    /**
+     * @param configuration the configuration to compile
+     * @return the compiled rules
+     * @throws IllegalStateException in case the configuration is invalid
+     */
+    static Rules compile(OsgiInstallerHealthCheckConfiguration configuration) {
+        return new Rules(configuration, Collections.emptyMap());
+    }
+
+    /**
+     * @param configuration the configuration to compile
+     * @param registeredTypeEvaluators the evaluators registered as services per resource type
+     * @return the compiled rules
+     * @throws IllegalStateException in case the configuration is invalid
+     */
+    static Rules compile(OsgiInstallerHealthCheckConfiguration configuration, Map<String, ResourceTypeEvaluator> registeredTypeEvaluators) {
+        return new Rules(configuration, registeredTypeEvaluators);
+    }
+
+    /**
+     * @return the name of the health check
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @return the status reported for resources which are not installed correctly, either CRITICAL or WARN
+     */
+    Result.Status getSeverity() {
+        return severity;
+    }
+
+    /**
+     * @return the tags of the status-only health check, empty in case there should be no such health check
+     */
+    String[] getStatusOnlyTags() {
+        return statusOnlyTags.clone();
+    }
+
+    /**
+     * @param status the status
+     * @return the result of the status-only health check with the given status
+     */
+    Result getStatusOnlyResult(Result.Status status) {
+        return statusOnlyResults.get(status);
+    }
+
+    boolean isCheckBundles() {
+        return checkBundles;
+    }
+
+    boolean isCheckConfigurations() {
+        return checkConfigurations;
+    }
+
+    boolean isAllowIgnoredArtifactsInGroup() {
+        return allowIgnoredArtifactsInGroup;
+    }
+
+    boolean isEventDrivenEvaluation() {
+        return eventDrivenEvaluation;
+    }
+
+    /**
+     * @return {@code true} in case the groups are evaluated together with the other configurations having this option
+     */
+    boolean isSharedEvaluation() {
+        return sharedEvaluation;
+    }
+
+    boolean isMemoizeResults() {
+        return memoizeResults;
+    }
+
+    int getParallelism() {
+        return parallelism;
+    }
+
+    int getParallelEvaluationThreshold() {
+        return parallelEvaluationThreshold;
+    }
+
+    /**
+     * @return the maximum number of resources reported with a dedicated entry, 0 in case there is no limit
+     */
+    int getMaxReportedResources() {
+        return maxReportedResources;
+    }
+
+    /**
+     * @return the delay between two background scans in milliseconds, 0 in case background scanning is disabled
+     */
+    long getBackgroundScanIntervalMs() {
+        return backgroundScanIntervalMs;
+    }
+
+    /**
+     * @return the maximum age of the result of a background scan in milliseconds, 0 in case there is no limit
+     */
+    long getBackgroundScanMaxAgeMs() {
+        return backgroundScanMaxAgeMs;
+    }
+
+    /**
+     * @return the delay in milliseconds between the first installer event and the background scan triggered by it
+     */
+    long getEventDebounceMs() {
+        return eventDebounceMs;
+    }
+
+    /**
+     * @return the maximum time in milliseconds an execution may spend evaluating groups, 0 in case there is no limit
+     */
+    long getTimeBudgetMs() {
+        return timeBudgetMs;
+    }
+
+    /**
+     * @return {@code true} in case the installed bundles should be cross-checked against the framework
+     */
+    boolean isVerifyBundleStates() {
+        return verifyBundleStates;
+    }
+
+    UrlPrefixMatcher getUrlPrefixMatcher() {
+        return urlPrefixMatcher;
+    }
+
+    SkipList getSkipList() {
+        return skipList;
+    }
+
+    /**
+     * @param resourceType the type of a resource
+     * @return the evaluator for resources of the given type or {@code null} in case they are not checked
+     */
+    ResourceTypeEvaluator getTypeEvaluator(String resourceType) {
+        return typeEvaluators.get(resourceType);
+    }
+
+    /**
+     * The verdicts of the built-in evaluators only depend on the parts of the installer state covered by the
+     * {@link StateFingerprint}, the ones of registered evaluators might depend on anything else (e.g. the state of a
+     * content package), therefore only the former may be reused while the group does not change.
+     *
+     * @param verdict the verdict of a group evaluated with these rules
+     * @return {@code true} in case the given verdict may be reused as long as the group does not change
+     */
+    boolean isReusable(GroupVerdict verdict) {
+        final String type = verdict.getType();
+        return onlyBuiltInTypeEvaluators || type.isEmpty() || typeEvaluators.get(type) instanceof InstallerStateEvaluator;
+    }
+
+    /**
+     * @param verdicts the verdicts of groups evaluated with these rules
+     * @return {@code true} in case all given verdicts may be reused as long as their groups do not change
+     */
+    boolean isReusable(List<GroupVerdict> verdicts) {
+        for (final GroupVerdict verdict : verdicts) {
+            if (!isReusable(verdict)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the evaluators of all checked resource types
+     */
+    Map<String, ResourceTypeEvaluator> getTypeEvaluators() {
+        return typeEvaluators;
+    }
+
+    /**
+     * Only meant for diagnostics.
+     *
+     * @param resourceType the type of a resource which is not checked
+     * @return the reason why resources of the given type are not checked
+     */
+    String getReasonForUncheckedType(String resourceType) {
+        if (InstallableResource.TYPE_BUNDLE.equals(resourceType)) {
+            return "bundle checks are disabled";
+        }
+        if (InstallableResource.TYPE_CONFIG.equals(resourceType)) {
+            return "configuration checks are disabled";
+        }
+        return "there is no evaluator for resources of type " + resourceType;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.util.function.Supplier;
+
+/**
+ * Evaluates the groups together with the rules of all other instances with shared evaluation (see
+ * {@link SharedInstallerStateEvaluator}). Evaluates all groups on its own as long as there is no other such instance.
+ */
+final class SharedEvaluation implements EvaluationStrategy {
+
+    private final Rules rules;
+
+    private final Supplier<SharedInstallerStateEvaluator> sharedEvaluator;
+
+    /** the health check instance the rules are registered for */
+    private final Object owner;
+
+    private final FullEvaluation separateEvaluation;
+
+    /** the result built from the last shared verdicts */
+    private volatile CachedResult sharedResult;
+
+    /**
+     * @param rules the rules to apply
+     * @param context the access to the installer state, only used as long as the groups are evaluated separately
+     * @param sharedEvaluator provides the shared evaluator, which might not be available
+     * @param owner the health check instance the rules are registered for
+     */
+    SharedEvaluation(Rules rules, Context context, Supplier<SharedInstallerStateEvaluator> sharedEvaluator, Object owner) {
+        this.rules = rules;
+        this.sharedEvaluator = sharedEvaluator;
+        this.owner = owner;
+        this.separateEvaluation = new FullEvaluation(rules, context);
+    }
+
+    @Override
+    public Rules getRules() {
+        return rules;
+    }
+
+    @Override
+    public CachedResult evaluate(ExecutionSample sample) {
+        final SharedInstallerStateEvaluator shared = sharedEvaluator.get();
+        final SharedInstallerStateEvaluator.Evaluation evaluation = shared != null ? shared.evaluate(owner, rules) : null;
+        if (evaluation == null) {
+            return separateEvaluation.evaluate(sample);
+        }
+        sample.addStateRetrievalNanos(evaluation.getStateRetrievalNanos());
+        sample.scanned(evaluation.getGroups());
+        sample.evaluated(evaluation.getNumEvaluatedGroups());
+        // the result is only built once per epoch
+        final CachedResult previous = sharedResult;
+        if (previous != null && previous.getVerdicts() == evaluation.getVerdicts()) {
+            return previous;
+        }
+        final CachedResult result = new CachedResult(rules, 0, evaluation.getVerdicts(), OsgiInstallerHealthCheck.buildResult(evaluation.getVerdicts(), rules), evaluation.getGroups());
+        sharedResult = result;
+        return result;
+    }
+}
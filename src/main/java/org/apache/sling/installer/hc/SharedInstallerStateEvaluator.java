@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.sling.installer.api.info.InstallationState;
+import org.apache.sling.installer.api.info.ResourceGroup;
+import org.apache.sling.installer.hc.api.InstallationStateSnapshotService;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Evaluates the rules of all {@link OsgiInstallerHealthCheck} instances with shared evaluation enabled in one traversal
+ * of the installer state (see {@link FusedGroupEvaluator}). The traversal happens at most once per snapshot (i.e. per installer event epoch), the first instance being
+ * executed within an epoch evaluates the groups for all other instances as well.
+ */
+@Component(service = SharedInstallerStateEvaluator.class)
+public class SharedInstallerStateEvaluator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SharedInstallerStateEvaluator.class);
+
+    @Reference
+    private InstallationStateSnapshotService snapshotService;
+
+    /** the current rules of all health check instances, guarded by this */
+    private final Map<Object, Rules> rulesByOwner = new LinkedHashMap<>();
+
+    /** the snapshot the {@link #epochVerdicts} have been calculated for, guarded by this */
+    private InstallationState epochState;
+
+    /** the verdicts for the {@link #epochState} per rule set, guarded by this */
+    private Map<Rules, List<GroupVerdict>> epochVerdicts = new HashMap<>();
+
+    /** guarded by this */
+    private long numTraversals;
+
+    /**
+     * Removes the rules of the given health check instance, so that they are no longer evaluated.
+     *
+     * @param owner the health check instance
+     */
+    synchronized void unregister(Object owner) {
+        rulesByOwner.remove(owner);
+    }
+
+    /**
+     * Registers the given rules for the given health check instance and returns the verdicts for the current
+     * installer state. In case there are no verdicts for the current snapshot yet, the rules of all registered
+     * instances are evaluated in one traversal.
+     *
+     * @param owner
+     *            the health check instance
+     * @param rules
+     *            the current rules of that instance
+     * @return the evaluation or {@code null} in case the given instance is the only registered one (and therefore
+     *         nothing can be shared)
+     */
+    synchronized Evaluation evaluate(Object owner, Rules rules) {
+        rulesByOwner.put(owner, rules);
+        if (rulesByOwner.size() < 2) {
+            return null;
+        }
+        final long startTime = System.nanoTime();
+        final InstallationState state = snapshotService.getSnapshot();
+        final long stateRetrievalNanos = System.nanoTime() - startTime;
+        final List<ResourceGroup> groups = state.getInstalledResources();
+        if (state != epochState) {
+            epochState = state;
+            epochVerdicts = new HashMap<>();
+        }
+        List<GroupVerdict> verdicts = epochVerdicts.get(rules);
+        if (verdicts != null) {
+            return new Evaluation(groups, verdicts, stateRetrievalNanos, 0);
+        }
+        verdicts = traverse(groups, rules);
+        return new Evaluation(groups, verdicts, stateRetrievalNanos, groups.size());
+    }
+
+    /**
+     * Evaluates all groups for all registered rule sets which have not been evaluated in the current epoch yet. The
+     * verdicts are kept for the rest of the epoch, apart from the ones which must be calculated again on every
+     * execution (see {@link Rules#isReusable(GroupVerdict)}): those are only returned for the requested rules.
+     *
+     * @param groups the groups of the current snapshot
+     * @param requestedRules the rules to return the verdicts for
+     * @return the verdicts for the requested rules
+     */
+    private List<GroupVerdict> traverse(List<ResourceGroup> groups, Rules requestedRules) {
+        final Set<Rules> pendingRules = new LinkedHashSet<>(rulesByOwner.values());
+        pendingRules.removeAll(epochVerdicts.keySet());
+        final Rules[] ruleSets = pendingRules.toArray(new Rules[0]);
+        List<GroupVerdict> requestedVerdicts = null;
+        // only more than 64 instances require more than one pass
+        for (int start = 0; start < ruleSets.length; start += FusedGroupEvaluator.MAX_RULE_SETS) {
+            final Rules[] chunk = Arrays.copyOfRange(ruleSets, start, Math.min(ruleSets.length, start + FusedGroupEvaluator.MAX_RULE_SETS));
+            final List<List<GroupVerdict>> verdictsPerRuleSet = FusedGroupEvaluator.compile(chunk).evaluate(groups);
+            for (int i = 0; i < chunk.length; i++) {
+                final List<GroupVerdict> verdicts = verdictsPerRuleSet.get(i);
+                if (chunk[i] == requestedRules) {
+                    requestedVerdicts = verdicts;
+                }
+                if (chunk[i].isReusable(verdicts)) {
+                    epochVerdicts.put(chunk[i], verdicts);
+                }
+            }
+            numTraversals++;
+        }
+        LOG.debug("Evaluated {} groups for {} rule sets in one traversal", groups.size(), ruleSets.length);
+        return requestedVerdicts;
+    }
+
+    /**
+     * @return the number of traversals of the installer state so far
+     */
+    synchronized long getNumTraversals() {
+        return numTraversals;
+    }
+
+    /**
+     * The verdicts for one rule set.
+     */
+    static final class Evaluation {
+        private final List<ResourceGroup> groups;
+        private final List<GroupVerdict> verdicts;
+        private final long stateRetrievalNanos;
+        private final int numEvaluatedGroups;
+
+        Evaluation(List<ResourceGroup> groups, List<GroupVerdict> verdicts, long stateRetrievalNanos, int numEvaluatedGroups) {
+            this.groups = groups;
+            this.verdicts = verdicts;
+            this.stateRetrievalNanos = stateRetrievalNanos;
+            this.numEvaluatedGroups = numEvaluatedGroups;
+        }
+
+        List<ResourceGroup> getGroups() {
+            return groups;
+        }
+
+        /**
+         * @return the verdicts in the order of the groups, the same instance for all evaluations within an epoch
+         */
+        List<GroupVerdict> getVerdicts() {
+            return verdicts;
+        }
+
+        long getStateRetrievalNanos() {
+            return stateRetrievalNanos;
+        }
+
+        /**
+         * @return the number of groups evaluated for this rule set, 0 in case the verdicts have been calculated before
+         */
+        int getNumEvaluatedGroups() {
+            return numEvaluatedGroups;
+        }
+    }
+}
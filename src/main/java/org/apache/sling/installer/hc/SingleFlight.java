@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent computations: while one computation is running, all further callers wait for it and
+ * receive its result instead of starting a computation of their own. Callers arriving after a computation has
+ * finished always start a new one. A computation which has been cancelled as the caller who started it has been
+ * interrupted is started again by the waiting callers which have not been interrupted themselves.
+ *
+ * @param <T> the type of the computation's result
+ */
+final class SingleFlight<T> {
+
+    private final AtomicReference<CompletableFuture<T>> inFlight = new AtomicReference<>();
+
+    private final Runnable onJoin;
+
+    /**
+     * @param onJoin called whenever a caller joins a running computation instead of starting one
+     */
+    SingleFlight(Runnable onJoin) {
+        this.onJoin = onJoin;
+    }
+
+    /**
+     * @param computation the computation to run in case none is running
+     * @return the result of the computation started by this or by a concurrent caller
+     * @throws InterruptedException in case the caller has been interrupted while waiting for a concurrent computation
+     */
+    T run(Supplier<T> computation) throws InterruptedException {
+        final CompletableFuture<T> ownFlight = new CompletableFuture<>();
+        while (true) {
+            CompletableFuture<T> runningFlight;
+            while ((runningFlight = inFlight.get()) == null) {
+                if (inFlight.compareAndSet(null, ownFlight)) {
+                    return compute(computation, ownFlight);
+                }
+            }
+            onJoin.run();
+            try {
+                return runningFlight.get();
+            } catch (CancellationException e) {
+                // thrown as is instead of being wrapped, the caller which started the computation has been interrupted
+                if (Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                inFlight.compareAndSet(runningFlight, null);
+            } catch (ExecutionException e) {
+                // the caller which started the computation has received the same exception
+                final Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException("Concurrent computation failed", cause);
+            }
+        }
+    }
+
+    private T compute(Supplier<T> computation, CompletableFuture<T> ownFlight) {
+        try {
+            final T result = computation.get();
+            // release before completing, so that callers waking up will never join the finished computation
+            inFlight.set(null);
+            ownFlight.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            inFlight.set(null);
+            ownFlight.completeExceptionally(e);
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.osgi.framework.Version;
+import org.osgi.framework.VersionRange;
+
+/**
+ * Index of the entity ids (optionally restricted to certain versions) which should not be reported.
+ * Each entry has the format {@code <entity id> [<version>|<version range>]}, where a version range uses the OSGi
+ * syntax (e.g. {@code [1.0,2.0)}). An entry without version matches every version of the entity.
+ * <p>
+ * Per entity id the versions are kept as sorted, non-overlapping intervals, so that a lookup only requires a hash
+ * lookup and a binary search. Instances are immutable and thread-safe.
+ */
+final class SkipList {
+
+    static final SkipList EMPTY = new SkipList(Collections.emptyMap());
+
+    /** marker for entries without version restriction */
+    private static final Interval[] ANY_VERSION = new Interval[0];
+
+    private final Map<String, Interval[]> intervalsByEntityId;
+
+    private SkipList(Map<String, Interval[]> intervalsByEntityId) {
+        this.intervalsByEntityId = intervalsByEntityId;
+    }
+
+    /**
+     * @param entityIdsAndVersions the entries, may be {@code null}
+     * @return the index
+     * @throws IllegalArgumentException in case an entry is invalid or entries for the same entity id overlap or
+     *             contradict each other
+     */
+    static SkipList parse(String[] entityIdsAndVersions) throws IllegalArgumentException {
+        if (entityIdsAndVersions == null || entityIdsAndVersions.length == 0) {
+            return EMPTY;
+        }
+        Map<String, List<Interval>> intervalsByEntityId = new HashMap<>();
+        for (String entityIdAndVersion : entityIdsAndVersions) {
+            String[] parts = entityIdAndVersion.trim().split(" ", 2);
+            final String entityId = parts[0];
+            final Interval interval;
+            if (parts.length > 1) {
+                interval = Interval.parse(parts[1].trim(), entityId);
+            } else {
+                interval = null;
+            }
+            // does an entry with the same id already exist?
+            if (intervalsByEntityId.containsKey(entityId)) {
+                List<Interval> intervals = intervalsByEntityId.get(entityId);
+                // previous or current entry contained no version?
+                if (intervals == null || interval == null) {
+                    throw new IllegalArgumentException("One entry with 'id' " + entityId + " contained no version limitation and there was another entry with the same id. This is an invalid combination. Please only list the same id more than once if different versions are given as well.");
+                }
+                intervals.add(interval);
+            } else {
+                final List<Interval> intervals;
+                if (interval == null) {
+                    intervals = null;
+                } else {
+                    intervals = new ArrayList<>();
+                    intervals.add(interval);
+                }
+                intervalsByEntityId.put(entityId, intervals);
+            }
+        }
+        Map<String, Interval[]> index = new HashMap<>();
+        for (Map.Entry<String, List<Interval>> entry : intervalsByEntityId.entrySet()) {
+            List<Interval> intervals = entry.getValue();
+            if (intervals == null) {
+                index.put(entry.getKey(), ANY_VERSION);
+            } else {
+                intervals.sort(Interval.BY_LEFT);
+                for (int i = 1; i < intervals.size(); i++) {
+                    if (intervals.get(i - 1).overlaps(intervals.get(i))) {
+                        throw new IllegalArgumentException("The entries with 'id' " + entry.getKey() + " and versions " + intervals.get(i - 1) + " and " + intervals.get(i) + " overlap. Please only list non-overlapping versions for the same id.");
+                    }
+                }
+                index.put(entry.getKey(), intervals.toArray(new Interval[0]));
+            }
+        }
+        return new SkipList(index);
+    }
+
+    /**
+     * @param entityId the entity id
+     * @return {@code true} in case all versions of the given entity id are skipped
+     */
+    boolean isAnyVersionSkipped(String entityId) {
+        return intervalsByEntityId.get(entityId) == ANY_VERSION;
+    }
+
+    /**
+     * @param entityId the entity id
+     * @param version the version, may be {@code null}
+     * @return {@code true} in case the given entity id is skipped for the given version
+     */
+    boolean isSkipped(String entityId, Version version) {
+        Interval[] intervals = intervalsByEntityId.get(entityId);
+        if (intervals == null) {
+            return false;
+        }
+        if (intervals == ANY_VERSION) {
+            return true;
+        }
+        if (version == null) {
+            return false;
+        }
+        // find the last interval starting at or before the version
+        int low = 0;
+        int high = intervals.length - 1;
+        int candidate = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (intervals[middle].left.compareTo(version) <= 0) {
+                candidate = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        if (candidate < 0) {
+            return false;
+        }
+        // an interval with an exclusive left bound equal to the version may be preceded by one including it
+        return intervals[candidate].includes(version) || (candidate > 0 && intervals[candidate - 1].includes(version));
+    }
+
+    /**
+     * @return the number of entity ids in this skip list
+     */
+    int size() {
+        return intervalsByEntityId.size();
+    }
+
+    private static final class Interval {
+
+        static final Comparator<Interval> BY_LEFT = (a, b) -> {
+            int result = a.left.compareTo(b.left);
+            if (result == 0 && a.leftClosed != b.leftClosed) {
+                result = a.leftClosed ? -1 : 1;
+            }
+            return result;
+        };
+
+        private final Version left;
+        private final boolean leftClosed;
+        private final Version right;
+        private final boolean rightClosed;
+        private final String text;
+
+        private Interval(Version left, boolean leftClosed, Version right, boolean rightClosed, String text) {
+            this.left = left;
+            this.leftClosed = leftClosed;
+            this.right = right;
+            this.rightClosed = rightClosed;
+            this.text = text;
+        }
+
+        static Interval parse(String versionOrRange, String entityId) {
+            if (versionOrRange.startsWith("[") || versionOrRange.startsWith("(")) {
+                VersionRange range = new VersionRange(versionOrRange);
+                if (range.isEmpty()) {
+                    throw new IllegalArgumentException("The version range " + versionOrRange + " of the entry with 'id' " + entityId + " does not contain any version.");
+                }
+                return new Interval(range.getLeft(), range.getLeftType() == VersionRange.LEFT_CLOSED,
+                        range.getRight(), range.getRightType() == VersionRange.RIGHT_CLOSED, versionOrRange);
+            }
+            // a single version (not a range starting at that version as in OSGi)
+            Version version = Version.parseVersion(versionOrRange);
+            return new Interval(version, true, version, true, versionOrRange);
+        }
+
+        boolean includes(Version version) {
+            int compareLeft = left.compareTo(version);
+            if (compareLeft > 0 || (compareLeft == 0 && !leftClosed)) {
+                return false;
+            }
+            int compareRight = right.compareTo(version);
+            return compareRight > 0 || (compareRight == 0 && rightClosed);
+        }
+
+        /**
+         * @param next an interval which does not start before this one
+         * @return {@code true} in case both intervals have at least one version in common
+         */
+        boolean overlaps(Interval next) {
+            int compare = next.left.compareTo(right);
+            return compare < 0 || (compare == 0 && rightClosed && next.leftClosed);
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.util.List;
+import java.util.Objects;
+
+import org.apache.sling.installer.api.info.Resource;
+import org.apache.sling.installer.api.info.ResourceGroup;
+
+/**
+ * Calculates cheap 64 bit fingerprints over the parts of the installer state which are relevant for the health check
+ * (entity id, URL, state, digest and version of every resource).
+ * The fingerprint is order-sensitive, as the order of groups and resources determines the order of the reported
+ * messages. It relies on the cached hash codes of the involved strings, therefore calculating it does not allocate
+ * any objects. As those hash codes only have 32 bits, equal fingerprints are confirmed by comparing the states
+ * (see {@link #isSameState(ResourceGroup, ResourceGroup)}) before a previous verdict is reused.
+ */
+final class StateFingerprint {
+
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+
+    private StateFingerprint() {
+    }
+
+    /**
+     * @param groups the resource groups
+     * @return the fingerprint over all given groups
+     */
+    static long of(List<ResourceGroup> groups) {
+        return of(ofEach(groups));
+    }
+
+    /**
+     * @param groups the resource groups
+     * @return the fingerprints of the given groups, in the same order
+     */
+    static long[] ofEach(List<ResourceGroup> groups) {
+        final long[] fingerprints = new long[groups.size()];
+        int i = 0;
+        for (ResourceGroup group : groups) {
+            fingerprints[i++] = of(group);
+        }
+        return fingerprints;
+    }
+
+    /**
+     * @param groupFingerprints the fingerprints of all groups
+     * @return the fingerprint over all groups
+     */
+    static long of(long[] groupFingerprints) {
+        long fingerprint = SEED;
+        for (long groupFingerprint : groupFingerprints) {
+            fingerprint = combine(fingerprint, groupFingerprint);
+        }
+        return combine(fingerprint, groupFingerprints.length);
+    }
+
+    /**
+     * @param group the resource group
+     * @return the fingerprint of a single group
+     */
+    static long of(ResourceGroup group) {
+        long fingerprint = SEED;
+        List<Resource> resources = group.getResources();
+        for (Resource resource : resources) {
+            fingerprint = combine(fingerprint, Objects.hashCode(resource.getEntityId()));
+            fingerprint = combine(fingerprint, Objects.hashCode(resource.getURL()));
+            fingerprint = combine(fingerprint, resource.getState() == null ? -1 : resource.getState().ordinal());
+            fingerprint = combine(fingerprint, Objects.hashCode(resource.getDigest()));
+            fingerprint = combine(fingerprint, Objects.hashCode(resource.getVersion()));
+        }
+        return combine(fingerprint, resources.size());
+    }
+
+    /**
+     * Only called in case the fingerprints are equal, usually the strings of both states are the same instances.
+     *
+     * @param groups the resource groups
+     * @param previousGroups the resource groups of a previous evaluation
+     * @return {@code true} in case all relevant parts of the given states are equal
+     */
+    static boolean isSameState(List<ResourceGroup> groups, List<ResourceGroup> previousGroups) {
+        if (groups == previousGroups) {
+            return true;
+        }
+        if (groups.size() != previousGroups.size()) {
+            return false;
+        }
+        for (int i = 0; i < groups.size(); i++) {
+            if (!isSameState(groups.get(i), previousGroups.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param group the resource group
+     * @param previousGroup the resource group of a previous evaluation
+     * @return {@code true} in case entity id, URL, state, digest and version of all resources are equal
+     */
+    static boolean isSameState(ResourceGroup group, ResourceGroup previousGroup) {
+        if (group == previousGroup) {
+            return true;
+        }
+        final List<Resource> resources = group.getResources();
+        final List<Resource> previousResources = previousGroup.getResources();
+        if (resources.size() != previousResources.size()) {
+            return false;
+        }
+        for (int i = 0; i < resources.size(); i++) {
+            final Resource resource = resources.get(i);
+            final Resource previousResource = previousResources.get(i);
+            if (!Objects.equals(resource.getEntityId(), previousResource.getEntityId())
+                    || !Objects.equals(resource.getURL(), previousResource.getURL())
+                    || resource.getState() != previousResource.getState()
+                    || !Objects.equals(resource.getDigest(), previousResource.getDigest())
+                    || !Objects.equals(resource.getVersion(), previousResource.getVersion())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long combine(long fingerprint, long value) {
+        return mix(fingerprint * 31 + value);
+    }
+
+    /** the finalizer of the SplitMix64 generator, spreads the bits of 32 bit hash codes over all 64 bits */
+    private static long mix(long value) {
+        long z = value;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
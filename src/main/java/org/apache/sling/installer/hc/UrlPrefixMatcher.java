@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.util.Arrays;
+
+/**
+ * Checks whether a URL starts with one of a given set of prefixes.
+ * The prefixes are compiled into a character trie once, so that matching a URL only requires a single pass over the
+ * URL's characters (stopping at the first complete prefix) and does not allocate any objects.
+ * Several matchers can be {@link #combine(UrlPrefixMatcher[]) combined} into one trie which tells in one pass which
+ * of the original matchers match a URL.
+ * Instances are immutable and thread-safe.
+ */
+final class UrlPrefixMatcher {
+
+    /** the maximum number of matchers which can be combined */
+    static final int MAX_COMBINED_MATCHERS = Long.SIZE;
+
+    private final Node root;
+
+    private final String[] prefixes;
+
+    /** the union of the masks of all prefixes, matching stops as soon as it has been reached */
+    private final long completeMask;
+
+    private UrlPrefixMatcher(Node root, String[] prefixes, long completeMask) {
+        this.root = root;
+        this.prefixes = prefixes;
+        this.completeMask = completeMask;
+    }
+
+    static UrlPrefixMatcher compile(String[] prefixes) {
+        final String[] copy = prefixes == null ? new String[0] : prefixes.clone();
+        final Node root = new Node();
+        final long completeMask = add(root, copy, 1L);
+        return new UrlPrefixMatcher(root, copy, completeMask);
+    }
+
+    /**
+     * @param matchers the matchers to combine, at most {@link #MAX_COMBINED_MATCHERS}
+     * @return a matcher whose {@link #match(String)} sets bit {@code i} in case the matcher at index {@code i} matches
+     */
+    static UrlPrefixMatcher combine(UrlPrefixMatcher[] matchers) {
+        if (matchers.length > MAX_COMBINED_MATCHERS) {
+            throw new IllegalArgumentException("At most " + MAX_COMBINED_MATCHERS + " matchers can be combined but got " + matchers.length);
+        }
+        final Node root = new Node();
+        long completeMask = 0;
+        int numPrefixes = 0;
+        for (int i = 0; i < matchers.length; i++) {
+            completeMask |= add(root, matchers[i].prefixes, 1L << i);
+            numPrefixes += matchers[i].prefixes.length;
+        }
+        final String[] prefixes = new String[numPrefixes];
+        int index = 0;
+        for (final UrlPrefixMatcher matcher : matchers) {
+            System.arraycopy(matcher.prefixes, 0, prefixes, index, matcher.prefixes.length);
+            index += matcher.prefixes.length;
+        }
+        return new UrlPrefixMatcher(root, prefixes, completeMask);
+    }
+
+    private static long add(Node root, String[] prefixes, long mask) {
+        long addedMask = 0;
+        for (String prefix : prefixes) {
+            if (prefix == null) {
+                continue;
+            }
+            Node node = root;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.getOrAddChild(prefix.charAt(i));
+            }
+            node.mask |= mask;
+            addedMask = mask;
+        }
+        return addedMask;
+    }
+
+    /**
+     * @param url the url to check
+     * @return {@code true} in case the given URL starts with at least one of the prefixes
+     */
+    boolean matches(String url) {
+        return match(url) != 0;
+    }
+
+    /**
+     * @param url the url to check
+     * @return the mask of all matchers which match the given URL, for a matcher which has not been combined either 1
+     *         (match) or 0 (no match)
+     */
+    long match(String url) {
+        Node node = root;
+        long mask = node.mask;
+        if (mask == completeMask || url == null) {
+            return mask;
+        }
+        for (int i = 0; i < url.length(); i++) {
+            node = node.getChild(url.charAt(i));
+            if (node == null) {
+                return mask;
+            }
+            mask |= node.mask;
+            if (mask == completeMask) {
+                return mask;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Only meant for diagnostics as it checks the prefixes one after the other.
+     *
+     * @param url the url to check
+     * @return the longest prefix the given URL starts with or {@code null} in case there is none
+     */
+    String getMatchingPrefix(String url) {
+        String longestPrefix = null;
+        for (final String prefix : prefixes) {
+            if (prefix != null && url != null && url.startsWith(prefix) && (longestPrefix == null || prefix.length() > longestPrefix.length())) {
+                longestPrefix = prefix;
+            }
+        }
+        return longestPrefix;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(prefixes);
+    }
+
+    private static final class Node {
+        private static final char[] NO_KEYS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        /** sorted in ascending order to allow for a binary search */
+        private char[] keys = NO_KEYS;
+        private Node[] children = NO_CHILDREN;
+        /** the matchers having a prefix which ends at this node */
+        private long mask;
+
+        Node getChild(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            return index >= 0 ? children[index] : null;
+        }
+
+        Node getOrAddChild(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            if (index >= 0) {
+                return children[index];
+            }
+            int insertionPoint = -index - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insertionPoint);
+            System.arraycopy(children, 0, newChildren, 0, insertionPoint);
+            System.arraycopy(keys, insertionPoint, newKeys, insertionPoint + 1, keys.length - insertionPoint);
+            System.arraycopy(children, insertionPoint, newChildren, insertionPoint + 1, children.length - insertionPoint);
+            Node child = new Node();
+            newKeys[insertionPoint] = c;
+            newChildren[insertionPoint] = child;
+            keys = newKeys;
+            children = newChildren;
+            return child;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.installer.api.info.ResourceGroup;
+
+/**
+ * Immutable snapshot of the verdicts of the last evaluation, keyed by entity id, together with the fingerprint of
+ * each group (see {@link StateFingerprint#of(ResourceGroup)}) and the rules used for the evaluation.
+ * A verdict can be reused as long as the rules are the same and the group did not change, i.e. it has the same
+ * fingerprint and the same state.
+ */
+final class VerdictCache {
+
+    static final VerdictCache EMPTY = new VerdictCache(null, Collections.emptyMap());
+
+    private final Rules rules;
+
+    private final Map<String, CachedVerdict> verdictsByEntityId;
+
+    private VerdictCache(Rules rules, Map<String, CachedVerdict> verdictsByEntityId) {
+        this.rules = rules;
+        this.verdictsByEntityId = verdictsByEntityId;
+    }
+
+    /**
+     * @param rules the rules used for the evaluation
+     * @param groups the evaluated groups
+     * @param fingerprints the fingerprints of the groups
+     * @param verdicts the verdicts of the groups
+     * @return the cache containing the given verdicts only (i.e. groups which disappeared are dropped), apart from
+     *         the ones which must not be reused (see {@link Rules#isReusable(GroupVerdict)})
+     */
+    static VerdictCache of(Rules rules, List<ResourceGroup> groups, long[] fingerprints, List<GroupVerdict> verdicts) {
+        final Map<String, CachedVerdict> verdictsByEntityId = new HashMap<>(groups.size() * 4 / 3 + 1);
+        for (int i = 0; i < groups.size(); i++) {
+            String entityId = OsgiInstallerHealthCheck.getEntityId(groups.get(i));
+            if (entityId != null && rules.isReusable(verdicts.get(i))) {
+                verdictsByEntityId.put(entityId, new CachedVerdict(groups.get(i), fingerprints[i], verdicts.get(i)));
+            }
+        }
+        return new VerdictCache(rules, verdictsByEntityId);
+    }
+
+    /**
+     * @param currentRules the rules to apply
+     * @return {@code true} in case the cached verdicts have been calculated with the given rules
+     */
+    boolean isValidFor(Rules currentRules) {
+        return rules == currentRules;
+    }
+
+    /**
+     * @param group the group
+     * @param fingerprint the current fingerprint of the group
+     * @return the cached verdict or {@code null} in case there is none or the group has changed in the meantime
+     */
+    GroupVerdict get(ResourceGroup group, long fingerprint) {
+        final String entityId = OsgiInstallerHealthCheck.getEntityId(group);
+        if (entityId == null) {
+            return null;
+        }
+        final CachedVerdict cachedVerdict = verdictsByEntityId.get(entityId);
+        if (cachedVerdict == null || cachedVerdict.fingerprint != fingerprint || !StateFingerprint.isSameState(group, cachedVerdict.group)) {
+            return null;
+        }
+        return cachedVerdict.verdict;
+    }
+
+    private static final class CachedVerdict {
+        private final ResourceGroup group;
+        private final long fingerprint;
+        private final GroupVerdict verdict;
+
+        CachedVerdict(ResourceGroup group, long fingerprint, GroupVerdict verdict) {
+            this.group = group;
+            this.fingerprint = fingerprint;
+            this.verdict = verdict;
+        }
+    }
+}
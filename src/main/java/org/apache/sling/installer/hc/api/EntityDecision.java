@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc.api;
+
+import java.util.List;
+
+import org.apache.felix.hc.api.Result;
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * The verdict of the OSGi installer health check for one resource group together with the decisions which led to it.
+ */
+@ProviderType
+public interface EntityDecision {
+
+    /**
+     * @return the name of the health check which took the decision
+     */
+    String getHealthCheckName();
+
+    /**
+     * @return the entity id of the group
+     */
+    String getEntityId();
+
+    /**
+     * @return {@code true} in case the group is checked by the health check, i.e. its type is checked and at least
+     *         one of its resources matches the configured URL prefixes
+     */
+    boolean isConsidered();
+
+    /**
+     * @return the status the health check reports for this group, {@code OK} in case the group is not considered
+     */
+    Result.Status getStatus();
+
+    /**
+     * @return how the states of the resources within the group are combined
+     */
+    String getGroupPolicy();
+
+    /**
+     * @return the decisions for the resources of the group, in the order in which the installer prioritizes them
+     */
+    List<ResourceDecision> getResources();
+
+    /**
+     * @return the messages which the health check reports for this group, empty in case there are none
+     */
+    List<String> getMessages();
+}
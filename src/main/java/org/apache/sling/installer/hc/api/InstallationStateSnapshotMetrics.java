@@ -0,0 +1,38 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc.api;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * Metrics of the {@link InstallationStateSnapshotService}, also exposed as MBean.
+ */
+@ProviderType
+public interface InstallationStateSnapshotMetrics {
+
+    /**
+     * @return the number of snapshots which have been built by retrieving the state from the OSGi installer
+     */
+    long getSnapshotsBuilt();
+
+    /**
+     * @return the number of requests which have been served with an existing snapshot (i.e. the number of avoided
+     *         retrievals of the state from the OSGi installer)
+     */
+    long getSnapshotsAvoided();
+}
@@ -0,0 +1,37 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc.api;
+
+import org.apache.sling.installer.api.info.InstallationState;
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * Provides snapshots of the OSGi installer state which are shared between all consumers.
+ * <p>
+ * Retrieving the state via {@code InfoProvider.getInstallationState()} makes the installer build a full copy of its
+ * state under a lock. Consumers which can live with a state which is as old as configured for this service (at most
+ * until the next installer event by default) should use this service instead.
+ */
+@ProviderType
+public interface InstallationStateSnapshotService {
+
+    /**
+     * @return the current snapshot, shared with other consumers and therefore immutable
+     */
+    InstallationState getSnapshot();
+}
@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc.api;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.felix.hc.api.Result;
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * Allows to wait until the OSGi installer has converged, i.e. it has no more resources to process, instead of
+ * repeatedly executing the health check.
+ * <p>
+ * The installer state is only checked when the installer signals that it has finished processing (and once when
+ * waiting starts), and the health check is only evaluated once there are no active resources left. The returned result
+ * is the one of the OSGi installer health check for the converged state.
+ */
+@ProviderType
+public interface InstallerConvergence {
+
+    /**
+     * Cancelling the returned future does not affect other callers.
+     *
+     * @return a future which is completed with the health check result once the installer has no active resources
+     *         and no installer event was received during the evaluation, or completed exceptionally in case the health
+     *         check is deactivated before
+     */
+    CompletableFuture<Result> converged();
+
+    /**
+     * Blocking variant of {@link #converged()}.
+     *
+     * @param timeout the maximum time to wait
+     * @return the health check result for the converged installer state
+     * @throws InterruptedException in case the current thread has been interrupted while waiting
+     * @throws TimeoutException in case the installer did not converge within the given time
+     */
+    Result awaitConverged(Duration timeout) throws InterruptedException, TimeoutException;
+}
@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc.api;
+
+import java.util.List;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * Explains the verdict of the OSGi installer health check for single resource groups, i.e. the resources sharing the
+ * same entity id (like {@code config:com.acme.Foo} or {@code bundle:com.acme.foo}), without executing the whole
+ * health check.
+ * <p>
+ * The groups are looked up in an index of the current installer state which is only built once per installer state
+ * snapshot. Only the requested groups are evaluated (with the current configuration of the health check).
+ */
+@ProviderType
+public interface InstallerEntityInspector {
+
+    /**
+     * Looks up the group in constant time.
+     *
+     * @param entityId the entity id of the group
+     * @return the decision for the group or {@code null} in case the OSGi installer has no group with this entity id
+     */
+    EntityDecision inspect(String entityId);
+
+    /**
+     * Looks up the first group in logarithmic time.
+     *
+     * @param entityIdPrefix the prefix of the entity ids (e.g. {@code config:com.acme.}), the empty string matches
+     *            all groups
+     * @param maxResults the maximum number of groups to evaluate
+     * @return the decisions for the groups whose entity id starts with the given prefix in the order of their entity
+     *         ids, never {@code null}
+     */
+    List<EntityDecision> inspectByPrefix(String entityIdPrefix, int maxResults);
+}
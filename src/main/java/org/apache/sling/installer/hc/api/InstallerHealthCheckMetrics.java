@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc.api;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * Execution metrics of the OSGi installer health check.
+ * <p>
+ * The service is registered once per health check together with an MBean exposing the same attributes. All counters
+ * are cumulative since the activation of the health check. Durations are measured in nanoseconds. In case background
+ * scanning is enabled every scan counts as one execution.
+ */
+@ProviderType
+public interface InstallerHealthCheckMetrics {
+
+    /**
+     * @return the number of executions
+     */
+    long getExecutionCount();
+
+    /**
+     * @return the shortest execution time or 0 if there was no execution yet
+     */
+    long getMinExecutionTimeNanos();
+
+    /**
+     * @return the longest execution time or 0 if there was no execution yet
+     */
+    long getMaxExecutionTimeNanos();
+
+    /**
+     * @return the mean execution time or 0 if there was no execution yet
+     */
+    double getMeanExecutionTimeNanos();
+
+    /**
+     * The percentiles are calculated from a histogram with logarithmic buckets, i.e. they are accurate to 1/8 of the
+     * magnitude of the returned value.
+     *
+     * @param percentile the percentile between 0 and 100 (e.g. 99.9)
+     * @return the execution time below or at which the given percentage of executions finished or 0 if there was no
+     *         execution yet
+     */
+    long getExecutionTimePercentileNanos(double percentile);
+
+    /**
+     * @return the total time of all executions
+     */
+    long getTotalExecutionTimeNanos();
+
+    /**
+     * @return the total time spent in retrieving the installation state from the OSGi installer
+     */
+    long getTotalStateRetrievalTimeNanos();
+
+    /**
+     * @return the total time spent in evaluating the installation state (i.e. the execution time without retrieving
+     *         the state)
+     */
+    long getTotalEvaluationTimeNanos();
+
+    /**
+     * @return the total number of resource groups retrieved from the OSGi installer
+     */
+    long getGroupsScanned();
+
+    /**
+     * @return the total number of resource groups which were evaluated (i.e. whose verdict could not be reused)
+     */
+    long getGroupsEvaluated();
+
+    /**
+     * @return the total number of resources retrieved from the OSGi installer
+     */
+    long getResourcesScanned();
+
+    /**
+     * @return the total number of invalid resources which were not reported as they are listed in the skip list
+     */
+    long getResourcesSkipped();
+
+    /**
+     * @return the total number of reported resources
+     */
+    long getResourcesFailing();
+
+    /**
+     * @return the total number of reported resources in state {@code IGNORED}
+     */
+    long getResourcesIgnored();
+
+    /**
+     * Only the allocations of the thread calling the health check are considered.
+     *
+     * @return the total number of bytes allocated by the executions or -1 if the JVM does not support measuring
+     *         allocations per thread
+     */
+    long getAllocatedBytes();
+
+    /**
+     * @return the number of executions which could reuse the previous result as the installer state did not change
+     */
+    long getMemoizationHits();
+
+    /**
+     * @return the number of executions which needed to evaluate the installer state, although result memoization was
+     *         enabled
+     */
+    long getMemoizationMisses();
+
+    /**
+     * @return the number of calls which did not evaluate the installer state on their own, but waited for the
+     *         result of a concurrent execution (not counted in {@link #getExecutionCount()})
+     */
+    long getJoinedExecutions();
+}
@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc.api;
+
+import org.apache.sling.installer.api.info.Resource;
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * The decision of the OSGi installer health check for one resource within a group.
+ */
+@ProviderType
+public interface ResourceDecision {
+
+    /**
+     * @return the resource
+     */
+    Resource getResource();
+
+    /**
+     * @return the URL prefix of the health check's configuration which matches the resource's URL, {@code null} in
+     *         case there is none or the URL has not been checked
+     */
+    String getMatchedUrlPrefix();
+
+    /**
+     * @return {@code true} in case the resource is not installed correctly but not reported as it is listed in the
+     *         skip list
+     */
+    boolean isSkipListHit();
+
+    /**
+     * @return what the health check made of the resource
+     */
+    String getDecision();
+}
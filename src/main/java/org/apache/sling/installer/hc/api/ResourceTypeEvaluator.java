@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc.api;
+
+import org.apache.sling.installer.api.info.Resource;
+import org.apache.sling.installer.api.tasks.ResourceState;
+import org.osgi.annotation.versioning.ConsumerType;
+
+/**
+ * Decides whether a resource of a specific type is installed correctly. The OSGi installer health check only checks
+ * resources of types for which there is an evaluator: bundles and configurations are checked by built-in evaluators
+ * (unless disabled in the configuration), evaluators for other types (like content packages or files handled by custom
+ * installer factories) can be registered as OSGi services with the service property {@link #RESOURCE_TYPES}.
+ * <p>
+ * In case multiple evaluators claim the same type, the one with the highest service ranking is used. An evaluator for
+ * type {@code bundle} or {@code config} replaces the built-in one.
+ * <p>
+ * The verdict may depend on more than the installer state of the resource (entity id, URL, state, digest and version),
+ * therefore the verdicts of registered evaluators are never reused by the memoization of results. Still they are only
+ * calculated again on installer events in case of event-driven evaluation, once per installer state snapshot in case
+ * multiple health checks share the evaluation and once per scan in case of background scanning.
+ */
+@ConsumerType
+public interface ResourceTypeEvaluator {
+
+    /**
+     * The service property (String or String[]) containing the resource types the evaluator is responsible for, e.g.
+     * {@code file}.
+     */
+    String RESOURCE_TYPES = "sling.installer.hc.resourceTypes";
+
+    /**
+     * Only called for resources whose URL matches the health check's URL prefixes.
+     *
+     * @param resource the resource to evaluate
+     * @return {@code true} in case the resource is installed correctly, {@code false} in case the health check should
+     *         report it (unless listed in the skip list)
+     */
+    boolean isInstalledCorrectly(Resource resource);
+
+    /**
+     * Only called once the result of the health check is rendered, which might be considerably later than the
+     * evaluation.
+     *
+     * @param resource the resource which is not installed correctly
+     * @param state the state of the resource at the time it has been evaluated
+     * @return the message with which the health check reports the resource
+     */
+    String getMessage(Resource resource, ResourceState state);
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import org.apache.felix.hc.api.Result;
+import org.apache.sling.installer.api.info.ResourceGroup;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * Emits the events via the JFR API, loaded by {@link FlightRecorderEvents} if available.
+ */
+final class JfrFlightRecorderEvents extends FlightRecorderEvents {
+
+    private static final EventType EXECUTION = EventType.getEventType(ExecutionEvent.class);
+
+    private static final EventType GROUP_EVALUATION = EventType.getEventType(GroupEvaluationEvent.class);
+
+    @Override
+    boolean isAvailable() {
+        return true;
+    }
+
+    @Override
+    Object beginExecution() {
+        if (!EXECUTION.isEnabled()) {
+            return null;
+        }
+        final ExecutionEvent event = new ExecutionEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    void commitExecution(Object event, String healthCheckName, ExecutionSample sample, Result.Status status) {
+        if (event == null) {
+            return;
+        }
+        final ExecutionEvent executionEvent = (ExecutionEvent) event;
+        executionEvent.end();
+        if (executionEvent.shouldCommit()) {
+            executionEvent.healthCheck = healthCheckName;
+            executionEvent.status = status != null ? status.name() : null;
+            executionEvent.stateRetrievalTime = sample.getStateRetrievalNanos();
+            executionEvent.groupsScanned = sample.getGroupsScanned();
+            executionEvent.groupsEvaluated = sample.getGroupsEvaluated();
+            executionEvent.resourcesScanned = sample.getResourcesScanned();
+            executionEvent.resourcesSkipped = sample.getResourcesSkipped();
+            executionEvent.resourcesFailing = sample.getResourcesFailing();
+            executionEvent.commit();
+        }
+    }
+
+    @Override
+    Object beginGroupEvaluation() {
+        if (!GROUP_EVALUATION.isEnabled()) {
+            return null;
+        }
+        final GroupEvaluationEvent event = new GroupEvaluationEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    void commitGroupEvaluation(Object event, ResourceGroup group) {
+        if (event == null) {
+            return;
+        }
+        final GroupEvaluationEvent groupEvaluationEvent = (GroupEvaluationEvent) event;
+        groupEvaluationEvent.end();
+        if (groupEvaluationEvent.shouldCommit()) {
+            groupEvaluationEvent.entityId = OsgiInstallerHealthCheck.getEntityId(group);
+            groupEvaluationEvent.numResources = group.getResources().size();
+            groupEvaluationEvent.commit();
+        }
+    }
+
+    @Name("org.apache.sling.installer.hc.Execution")
+    @Label("Installer Health Check Execution")
+    @Description("An evaluation of the OSGi installer state by the installer health check")
+    @Category({"Apache Sling", "Installer Health Check"})
+    @StackTrace(false)
+    static final class ExecutionEvent extends Event {
+        @Label("Health Check")
+        String healthCheck;
+
+        @Label("Status")
+        String status;
+
+        @Label("State Retrieval Time")
+        @Timespan
+        long stateRetrievalTime;
+
+        @Label("Scanned Groups")
+        long groupsScanned;
+
+        @Label("Evaluated Groups")
+        long groupsEvaluated;
+
+        @Label("Scanned Resources")
+        long resourcesScanned;
+
+        @Label("Skipped Resources")
+        long resourcesSkipped;
+
+        @Label("Failing Resources")
+        long resourcesFailing;
+    }
+
+    @Name("org.apache.sling.installer.hc.GroupEvaluation")
+    @Label("Slow Installer Group Evaluation")
+    @Description("An evaluation of a single resource group which took longer than the threshold")
+    @Category({"Apache Sling", "Installer Health Check"})
+    @Enabled(false)
+    @Threshold("1 ms")
+    @StackTrace(false)
+    static final class GroupEvaluationEvent extends Event {
+        @Label("Entity Id")
+        String entityId;
+
+        @Label("Resources")
+        int numResources;
+    }
+}
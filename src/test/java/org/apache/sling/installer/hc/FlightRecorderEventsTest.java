@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import org.apache.felix.hc.api.Result;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+public class FlightRecorderEventsTest {
+
+    @Test
+    public void testAvailableAsOfJava11() {
+        final boolean java8 = System.getProperty("java.specification.version").startsWith("1.");
+        assertThat(FlightRecorderEvents.INSTANCE.isAvailable(), equalTo(!java8));
+    }
+
+    @Test
+    public void testEventsAreNotCreatedWithoutRecording() {
+        assertThat(FlightRecorderEvents.INSTANCE.beginExecution(), nullValue());
+        assertThat(FlightRecorderEvents.INSTANCE.beginGroupEvaluation(), nullValue());
+        // must be no-ops for disabled events
+        FlightRecorderEvents.INSTANCE.commitExecution(null, "Installer", new ExecutionSample(), Result.Status.OK);
+        FlightRecorderEvents.INSTANCE.commitGroupEvaluation(null, null);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.sling.installer.api.InstallableResource;
+import org.apache.sling.installer.api.info.Resource;
+import org.apache.sling.installer.api.info.ResourceGroup;
+import org.apache.sling.installer.api.tasks.ResourceState;
+import org.apache.sling.installer.hc.api.ResourceTypeEvaluator;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class FusedGroupEvaluatorTest {
+
+    private static final String[] TYPES = {InstallableResource.TYPE_BUNDLE, InstallableResource.TYPE_CONFIG, "file"};
+
+    private static final ResourceState[] STATES = {ResourceState.INSTALL, ResourceState.IGNORED, ResourceState.INSTALLED};
+
+    private static final String[] URLS = {"jcrinstall:/apps/install/", "jcrinstall:/libs/install/", "launchpad:resources/", "jcrinstall:/apps/tenant/"};
+
+    /** only considers files which are not installed yet as invalid, in contrast to the built-in evaluators */
+    private static final ResourceTypeEvaluator FILE_EVALUATOR = new ResourceTypeEvaluator() {
+        @Override
+        public boolean isInstalledCorrectly(Resource resource) {
+            return resource.getState() != ResourceState.INSTALL;
+        }
+
+        @Override
+        public String getMessage(Resource resource, ResourceState state) {
+            return "File " + resource + " is " + state;
+        }
+    };
+
+    private static Rules rules(String[] urlPrefixes, boolean checkBundles, boolean checkConfigurations, boolean allowIgnoredArtifactsInGroup, String... skipEntityIds) {
+        return rules(urlPrefixes, checkBundles, checkConfigurations, allowIgnoredArtifactsInGroup, Collections.emptyMap(), skipEntityIds);
+    }
+
+    private static Rules rules(String[] urlPrefixes, boolean checkBundles, boolean checkConfigurations, boolean allowIgnoredArtifactsInGroup,
+            Map<String, ResourceTypeEvaluator> typeEvaluators, String... skipEntityIds) {
+        final OsgiInstallerHealthCheckConfiguration configuration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(configuration.urlPrefixes()).thenReturn(urlPrefixes);
+        when(configuration.checkBundles()).thenReturn(checkBundles);
+        when(configuration.checkConfigurations()).thenReturn(checkConfigurations);
+        when(configuration.allowIgnoredArtifactsInGroup()).thenReturn(allowIgnoredArtifactsInGroup);
+        when(configuration.skipEntityIds()).thenReturn(skipEntityIds);
+        return Rules.compile(configuration, typeEvaluators);
+    }
+
+    private static List<ResourceGroup> randomGroups(Random random, int numGroups) {
+        final List<ResourceGroup> groups = new ArrayList<>();
+        for (int i = 0; i < numGroups; i++) {
+            final String type = TYPES[random.nextInt(10) == 0 ? 2 : random.nextInt(2)];
+            final String entityId = type + ":" + (i % 20);
+            final List<Resource> resources = new ArrayList<>();
+            final int numResources = random.nextInt(4);
+            for (int j = 0; j < numResources; j++) {
+                final Resource resource = mock(Resource.class);
+                when(resource.getType()).thenReturn(random.nextInt(20) == 0 ? TYPES[random.nextInt(TYPES.length)] : type);
+                when(resource.getState()).thenReturn(STATES[random.nextInt(STATES.length)]);
+                when(resource.getURL()).thenReturn(URLS[random.nextInt(URLS.length)] + i + "-" + j);
+                when(resource.getEntityId()).thenReturn(entityId);
+                resources.add(resource);
+            }
+            final ResourceGroup group = mock(ResourceGroup.class);
+            when(group.getResources()).thenReturn(resources);
+            groups.add(group);
+        }
+        return groups;
+    }
+
+    @Test
+    public void testSameVerdictsAsSeparateEvaluation() {
+        final Rules[] ruleSets = {
+            rules(new String[]{"jcrinstall:/apps/"}, true, true, false),
+            rules(new String[]{"jcrinstall:/libs/", "launchpad:"}, true, false, false, "bundle:3", "config:4"),
+            rules(new String[]{"jcrinstall:/apps/tenant/"}, true, true, true),
+            rules(new String[]{"jcrinstall:/"}, false, true, true, "config:5"),
+            rules(new String[]{}, true, true, false),
+            rules(new String[]{""}, true, true, false),
+            rules(new String[]{"jcrinstall:/apps/"}, true, true, false, Collections.singletonMap("file", FILE_EVALUATOR)),
+            rules(new String[]{"jcrinstall:/"}, false, true, true, Collections.singletonMap("file", FILE_EVALUATOR), "file:6")
+        };
+        final List<ResourceGroup> groups = randomGroups(new Random(42), 500);
+        final List<List<GroupVerdict>> verdicts = FusedGroupEvaluator.compile(ruleSets).evaluate(groups);
+        for (int i = 0; i < ruleSets.length; i++) {
+            assertThat(verdicts.get(i).size(), equalTo(groups.size()));
+            for (int j = 0; j < groups.size(); j++) {
+                final GroupVerdict expected = OsgiInstallerHealthCheck.evaluateGroup(groups.get(j), ruleSets[i]);
+                final GroupVerdict actual = verdicts.get(i).get(j);
+                assertThat(actual.getType(), equalTo(expected.getType()));
+                assertThat(actual.getNumSkippedResources(), equalTo(expected.getNumSkippedResources()));
+                assertThat(actual.getFindings().size(), equalTo(expected.getFindings().size()));
+                for (int k = 0; k < expected.getFindings().size(); k++) {
+                    assertThat(actual.getFindings().get(k).getResource(), sameInstance(expected.getFindings().get(k).getResource()));
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooManyRuleSets() {
+        FusedGroupEvaluator.compile(new Rules[FusedGroupEvaluator.MAX_RULE_SETS + 1]);
+    }
+}
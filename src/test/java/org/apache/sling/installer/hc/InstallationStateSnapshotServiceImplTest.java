@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.reflect.FieldUtils;
+import org.apache.sling.installer.api.event.InstallationEvent;
+import org.apache.sling.installer.api.info.InfoProvider;
+import org.apache.sling.installer.api.info.InstallationState;
+import org.apache.sling.installer.api.info.ResourceGroup;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class InstallationStateSnapshotServiceImplTest {
+
+    private InfoProvider infoProvider;
+
+    @Before
+    public void setUp() {
+        final InstallationState installationState = mock(InstallationState.class);
+        final List<ResourceGroup> resourceGroups = new ArrayList<>();
+        resourceGroups.add(mock(ResourceGroup.class));
+        when(installationState.getInstalledResources()).thenReturn(resourceGroups);
+        when(installationState.getActiveResources()).thenReturn(new ArrayList<>());
+        when(installationState.getUntransformedResources()).thenReturn(new ArrayList<>());
+        infoProvider = mock(InfoProvider.class);
+        when(infoProvider.getInstallationState()).thenReturn(installationState);
+    }
+
+    private InstallationStateSnapshotServiceImpl snapshotService(boolean invalidateOnInstallerEvents, long maxSnapshotAgeInMs) throws IllegalAccessException {
+        final InstallationStateSnapshotServiceConfiguration configuration = mock(InstallationStateSnapshotServiceConfiguration.class);
+        when(configuration.invalidateOnInstallerEvents()).thenReturn(invalidateOnInstallerEvents);
+        when(configuration.maxSnapshotAgeInMs()).thenReturn(maxSnapshotAgeInMs);
+        final InstallationStateSnapshotServiceImpl snapshotService = new InstallationStateSnapshotServiceImpl();
+        FieldUtils.writeDeclaredField(snapshotService, "infoProvider", infoProvider, true);
+        snapshotService.configure(configuration);
+        return snapshotService;
+    }
+
+    @Test
+    public void testSnapshotIsSharedUntilNextEvent() throws IllegalAccessException {
+        final InstallationStateSnapshotServiceImpl snapshotService = snapshotService(true, 0);
+        final InstallationState snapshot = snapshotService.getSnapshot();
+        assertThat(snapshotService.getSnapshot(), sameInstance(snapshot));
+        assertThat(snapshotService.getSnapshot(), sameInstance(snapshot));
+        verify(infoProvider, times(1)).getInstallationState();
+        assertThat(snapshotService.getSnapshotsBuilt(), equalTo(1L));
+        assertThat(snapshotService.getSnapshotsAvoided(), equalTo(2L));
+
+        snapshotService.onEvent(mock(InstallationEvent.class));
+        assertThat(snapshotService.getSnapshot(), not(sameInstance(snapshot)));
+        verify(infoProvider, times(2)).getInstallationState();
+        assertThat(snapshotService.getSnapshotsBuilt(), equalTo(2L));
+    }
+
+    @Test
+    public void testMaxSnapshotAge() throws IllegalAccessException, InterruptedException {
+        final InstallationStateSnapshotServiceImpl snapshotService = snapshotService(false, 50);
+        final InstallationState snapshot = snapshotService.getSnapshot();
+        // events are ignored
+        snapshotService.onEvent(mock(InstallationEvent.class));
+        assertThat(snapshotService.getSnapshot(), sameInstance(snapshot));
+        Thread.sleep(100);
+        assertThat(snapshotService.getSnapshot(), not(sameInstance(snapshot)));
+        assertThat(snapshotService.getSnapshotsBuilt(), equalTo(2L));
+        assertThat(snapshotService.getSnapshotsAvoided(), equalTo(1L));
+    }
+
+    @Test
+    public void testNoReuseWithoutAnyInvalidation() throws IllegalAccessException {
+        final InstallationStateSnapshotServiceImpl snapshotService = snapshotService(false, 0);
+        snapshotService.getSnapshot();
+        snapshotService.getSnapshot();
+        assertThat(snapshotService.getSnapshotsBuilt(), equalTo(2L));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSnapshotIsImmutable() throws IllegalAccessException {
+        snapshotService(true, 0).getSnapshot().getInstalledResources().clear();
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketBoundaries() {
+        for (long value : new long[] { 0, 1, 15, 16, 17, 18, 31, 32, 1000, 123456789, Long.MAX_VALUE }) {
+            final int bucketIndex = LatencyHistogram.bucketIndex(value);
+            assertThat(LatencyHistogram.highestEquivalentValue(bucketIndex) >= value, equalTo(true));
+            if (bucketIndex > 0) {
+                assertThat(LatencyHistogram.highestEquivalentValue(bucketIndex - 1) < value, equalTo(true));
+            }
+        }
+        // the relative error is bounded
+        final long value = 1_000_000_000L;
+        final long highestEquivalentValue = LatencyHistogram.highestEquivalentValue(LatencyHistogram.bucketIndex(value));
+        assertThat(highestEquivalentValue - value < value / LatencyHistogram.SUB_BUCKETS, equalTo(true));
+    }
+
+    @Test
+    public void testPercentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertThat(histogram.getValueAtPercentile(50), equalTo(0L));
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertThat(histogram.getValueAtPercentile(0), equalTo(1023L));
+        assertThat(histogram.getValueAtPercentile(50), equalTo(LatencyHistogram.highestEquivalentValue(LatencyHistogram.bucketIndex(50000))));
+        assertThat(histogram.getValueAtPercentile(100), equalTo(LatencyHistogram.highestEquivalentValue(LatencyHistogram.bucketIndex(100000))));
+        histogram.record(-1);
+        assertThat(histogram.getValueAtPercentile(0), equalTo(0L));
+    }
+}
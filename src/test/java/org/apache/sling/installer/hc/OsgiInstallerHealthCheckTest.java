@@ -17,29 +17,67 @@
  */
 package org.apache.sling.installer.hc;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
 
 import org.apache.commons.lang3.reflect.FieldUtils;
 import org.apache.felix.hc.api.HealthCheck;
 import org.apache.felix.hc.api.Result;
+import org.apache.felix.hc.api.ResultLog;
 import org.apache.sling.installer.api.InstallableResource;
+import org.apache.sling.installer.api.event.InstallationEvent;
 import org.apache.sling.installer.api.info.InfoProvider;
 import org.apache.sling.installer.api.info.InstallationState;
 import org.apache.sling.installer.api.info.Resource;
 import org.apache.sling.installer.api.info.ResourceGroup;
 import org.apache.sling.installer.api.tasks.ResourceState;
-import org.hamcrest.Matchers;
+import org.apache.sling.installer.hc.api.EntityDecision;
+import org.apache.sling.installer.hc.api.InstallationStateSnapshotService;
+import org.apache.sling.installer.hc.api.ResourceTypeEvaluator;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceRegistration;
 import org.osgi.framework.Version;
+import org.osgi.framework.startlevel.BundleStartLevel;
+import org.osgi.framework.startlevel.FrameworkStartLevel;
 
+import static org.awaitility.Awaitility.await;
 import static org.hamcrest.MatcherAssert.assertThat;
-import static org.hamcrest.Matchers.aMapWithSize;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class OsgiInstallerHealthCheckTest {
@@ -75,11 +113,12 @@ public class OsgiInstallerHealthCheckTest {
         when(configuration.skipEntityIds()).thenReturn(entityIdsAndVersions);
         final OsgiInstallerHealthCheck healthCheck = new OsgiInstallerHealthCheck();
         healthCheck.configure(configuration);
-        Map<String, List<Version>> map = (Map<String, List<Version>>) FieldUtils.readDeclaredField(healthCheck, "skipEntityIdsWithVersions", true);
-        assertThat(map, Matchers.allOf(
-                aMapWithSize(2),
-                Matchers.hasEntry("idA", Arrays.asList(new Version("1.0.0"), new Version("2.0.0"))),
-                Matchers.hasEntry("idB", null)));
+        final SkipList skipList = ((Rules) FieldUtils.readDeclaredField(healthCheck, "rules", true)).getSkipList();
+        assertThat(skipList.size(), equalTo(2));
+        assertThat(skipList.isSkipped("idA", new Version("1.0.0")), equalTo(true));
+        assertThat(skipList.isSkipped("idA", new Version("2.0.0")), equalTo(true));
+        assertThat(skipList.isSkipped("idA", new Version("1.5.0")), equalTo(false));
+        assertThat(skipList.isAnyVersionSkipped("idB"), equalTo(true));
     }
 
     @Test(expected=IllegalStateException.class)
@@ -98,8 +137,8 @@ public class OsgiInstallerHealthCheckTest {
         when(configuration.skipEntityIds()).thenReturn(entityIdsAndVersions);
         final OsgiInstallerHealthCheck healthCheck = new OsgiInstallerHealthCheck();
         healthCheck.configure(configuration);
-        final Map<String, List<Version>> map = (Map<String, List<Version>>) FieldUtils.readDeclaredField(healthCheck, "skipEntityIdsWithVersions", true);
-        assertThat(map, aMapWithSize(0));
+        final SkipList skipList = ((Rules) FieldUtils.readDeclaredField(healthCheck, "rules", true)).getSkipList();
+        assertThat(skipList.size(), equalTo(0));
     }
 
     @Test
@@ -155,4 +194,1264 @@ public class OsgiInstallerHealthCheckTest {
         assertThat(result.toString(), containsString("Checked 0 OSGi bundle and 0 configuration groups."));
     }
 
+    private InstallationEvent installationEvent(final InstallationEvent.TYPE type, final Object source) {
+        final InstallationEvent event = mock(InstallationEvent.class);
+        when(event.getType()).thenReturn(type);
+        when(event.getSource()).thenReturn(source);
+        return event;
+    }
+
+    @Test
+    public void testEventDrivenEvaluation() throws IllegalAccessException {
+        final OsgiInstallerHealthCheckConfiguration configuration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(configuration.urlPrefixes()).thenReturn(new String[]{"jcrinstall:/apps/"});
+        when(configuration.checkConfigurations()).thenReturn(true);
+        when(configuration.checkBundles()).thenReturn(true);
+        when(configuration.eventDrivenEvaluation()).thenReturn(true);
+
+        final List<ResourceGroup> resourceGroups = new ArrayList<>();
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_CONFIG, ResourceState.INSTALLED, "jcrinstall:/apps/config/foo.cfg", "config:foo"));
+        final ResourceGroup bundleGroup = resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.INSTALL, "jcrinstall:/apps/install/foo.jar", "bundle:foo");
+        resourceGroups.add(bundleGroup);
+        final OsgiInstallerHealthCheck healthCheck = healthCheck(configuration, resourceGroups);
+        final InfoProvider infoProvider = (InfoProvider) FieldUtils.readDeclaredField(healthCheck, "infoProvider", true);
+
+        final Result result = healthCheck.execute();
+        assertThat(result.getStatus(), equalTo(Result.Status.CRITICAL));
+        assertThat(result.toString(), containsString("Checked 1 OSGi bundle and 1 configuration groups."));
+
+        // no event in between, the state is not retrieved again
+        assertThat(healthCheck.execute(), sameInstance(result));
+        verify(infoProvider, times(1)).getInstallationState();
+
+        // a STARTED event is always followed by the events of the processed resources
+        final Resource bundleResource = bundleGroup.getResources().get(0);
+        when(bundleResource.getState()).thenReturn(ResourceState.INSTALLED);
+        healthCheck.onEvent(installationEvent(InstallationEvent.TYPE.STARTED, null));
+        assertThat(healthCheck.execute(), sameInstance(result));
+
+        // the verdict of a group is not reused once its state has changed, even without an event for it
+        final Resource otherResource = mock(Resource.class);
+        when(otherResource.getEntityId()).thenReturn("bundle:bar");
+        healthCheck.onEvent(installationEvent(InstallationEvent.TYPE.PROCESSED, otherResource));
+        final Result updatedResult = healthCheck.execute();
+        assertThat(updatedResult.getStatus(), equalTo(Result.Status.OK));
+        assertThat(updatedResult.toString(), containsString("Checked 1 OSGi bundle and 1 configuration groups."));
+        assertThat(healthCheck.getMetrics().getGroupsEvaluated(), equalTo(3L));
+        verify(infoProvider, times(2)).getInstallationState();
+
+        // the event for the bundle leads to a new evaluation of its group only
+        when(bundleResource.getState()).thenReturn(ResourceState.INSTALL);
+        healthCheck.onEvent(installationEvent(InstallationEvent.TYPE.PROCESSED, bundleResource));
+        assertThat(healthCheck.execute().getStatus(), equalTo(Result.Status.CRITICAL));
+        assertThat(healthCheck.getMetrics().getGroupsEvaluated(), equalTo(4L));
+        verify(infoProvider, times(3)).getInstallationState();
+    }
+
+    @Test
+    public void testEventDrivenEvaluationWithUnknownSource() throws IllegalAccessException {
+        final OsgiInstallerHealthCheckConfiguration configuration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(configuration.urlPrefixes()).thenReturn(new String[]{"jcrinstall:/apps/"});
+        when(configuration.checkConfigurations()).thenReturn(true);
+        when(configuration.checkBundles()).thenReturn(true);
+        when(configuration.eventDrivenEvaluation()).thenReturn(true);
+
+        final List<ResourceGroup> resourceGroups = new ArrayList<>();
+        final ResourceGroup configGroup = resourceGroup(InstallableResource.TYPE_CONFIG, ResourceState.INSTALL, "jcrinstall:/apps/config/foo.cfg", "config:foo");
+        resourceGroups.add(configGroup);
+        final OsgiInstallerHealthCheck healthCheck = healthCheck(configuration, resourceGroups);
+        assertThat(healthCheck.execute().getStatus(), equalTo(Result.Status.CRITICAL));
+
+        when(configGroup.getResources().get(0).getState()).thenReturn(ResourceState.INSTALLED);
+        healthCheck.onEvent(installationEvent(InstallationEvent.TYPE.PROCESSED, new Object()));
+        assertThat(healthCheck.execute().getStatus(), equalTo(Result.Status.OK));
+    }
+
+    @Test
+    public void testModifiedConfigurationIsAppliedInEventDrivenEvaluation() throws IllegalAccessException {
+        final OsgiInstallerHealthCheckConfiguration configuration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(configuration.urlPrefixes()).thenReturn(new String[]{"jcrinstall:/apps/"});
+        when(configuration.checkConfigurations()).thenReturn(true);
+        when(configuration.checkBundles()).thenReturn(true);
+        when(configuration.eventDrivenEvaluation()).thenReturn(true);
+
+        final List<ResourceGroup> resourceGroups = new ArrayList<>();
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.INSTALL, "jcrinstall:/apps/install/foo.jar", "bundle:foo"));
+        final OsgiInstallerHealthCheck healthCheck = healthCheck(configuration, resourceGroups);
+        assertThat(healthCheck.execute().getStatus(), equalTo(Result.Status.CRITICAL));
+
+        final OsgiInstallerHealthCheckConfiguration modifiedConfiguration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(modifiedConfiguration.urlPrefixes()).thenReturn(new String[]{"jcrinstall:/apps/"});
+        when(modifiedConfiguration.checkConfigurations()).thenReturn(true);
+        when(modifiedConfiguration.checkBundles()).thenReturn(false);
+        when(modifiedConfiguration.eventDrivenEvaluation()).thenReturn(true);
+        healthCheck.configure(modifiedConfiguration);
+        final Result result = healthCheck.execute();
+        assertThat(result.getStatus(), equalTo(Result.Status.OK));
+        assertThat(result.toString(), containsString("Checked 0 OSGi bundle and 0 configuration groups."));
+    }
+
+    @Test
+    public void testParallelEvaluationLeadsToSameResultAsSequentialEvaluation() throws IllegalAccessException {
+        final List<ResourceGroup> resourceGroups = new ArrayList<>();
+        final ResourceState[] states = ResourceState.values();
+        for (int i = 0; i < 10 * ParallelGroupEvaluator.SEQUENTIAL_THRESHOLD; i++) {
+            final String type = i % 3 == 0 ? InstallableResource.TYPE_CONFIG : InstallableResource.TYPE_BUNDLE;
+            final String url = (i % 5 == 0 ? "jcrinstall:/libs/" : "jcrinstall:/apps/") + "install/" + i;
+            resourceGroups.add(resourceGroup(type, states[i % states.length], url, type + ":" + i));
+        }
+
+        final OsgiInstallerHealthCheckConfiguration configuration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(configuration.urlPrefixes()).thenReturn(new String[]{"jcrinstall:/apps/"});
+        when(configuration.checkConfigurations()).thenReturn(true);
+        when(configuration.checkBundles()).thenReturn(true);
+        final Result sequentialResult = healthCheck(configuration, resourceGroups).execute();
+
+        when(configuration.parallelism()).thenReturn(4);
+        when(configuration.parallelEvaluationThreshold()).thenReturn(1);
+        final OsgiInstallerHealthCheck healthCheck = healthCheck(configuration, resourceGroups);
+        try {
+            final Result parallelResult = healthCheck.execute();
+            assertThat(parallelResult.getStatus(), equalTo(Result.Status.CRITICAL));
+            assertThat(parallelResult.toString(), equalTo(sequentialResult.toString()));
+        } finally {
+            healthCheck.deactivate();
+        }
+    }
+
+    @Test
+    public void testResultMemoization() throws IllegalAccessException {
+        final OsgiInstallerHealthCheckConfiguration configuration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(configuration.urlPrefixes()).thenReturn(new String[]{"jcrinstall:/apps/"});
+        when(configuration.checkConfigurations()).thenReturn(true);
+        when(configuration.checkBundles()).thenReturn(true);
+        when(configuration.memoizeResults()).thenReturn(true);
+
+        final List<ResourceGroup> resourceGroups = new ArrayList<>();
+        final ResourceGroup bundleGroup = resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.INSTALL, "jcrinstall:/apps/install/foo.jar", "bundle:foo");
+        resourceGroups.add(bundleGroup);
+        final OsgiInstallerHealthCheck healthCheck = healthCheck(configuration, resourceGroups);
+
+        final Result result = healthCheck.execute();
+        assertThat(result.getStatus(), equalTo(Result.Status.CRITICAL));
+        assertThat(healthCheck.execute(), sameInstance(result));
+        assertThat(healthCheck.getMetrics().getMemoizationHits(), equalTo(1L));
+        assertThat(healthCheck.getMetrics().getMemoizationMisses(), equalTo(1L));
+        // the reused result is still counted
+        assertThat(healthCheck.getMetrics().getResourcesFailing(), equalTo(2L));
+
+        // a changed state leads to a new evaluation
+        when(bundleGroup.getResources().get(0).getState()).thenReturn(ResourceState.INSTALLED);
+        assertThat(healthCheck.execute().getStatus(), equalTo(Result.Status.OK));
+        assertThat(healthCheck.getMetrics().getMemoizationHits(), equalTo(1L));
+        assertThat(healthCheck.getMetrics().getMemoizationMisses(), equalTo(2L));
+
+        // a changed configuration leads to a new evaluation as well
+        healthCheck.configure(configuration);
+        healthCheck.execute();
+        assertThat(healthCheck.getMetrics().getMemoizationMisses(), equalTo(3L));
+    }
+
+    @Test
+    public void testResultMemoizationWithHashCollision() throws IllegalAccessException {
+        final OsgiInstallerHealthCheckConfiguration configuration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(configuration.urlPrefixes()).thenReturn(new String[]{"jcrinstall:/apps/"});
+        when(configuration.checkBundles()).thenReturn(true);
+        when(configuration.memoizeResults()).thenReturn(true);
+
+        final List<ResourceGroup> resourceGroups = new ArrayList<>();
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.INSTALL, "jcrinstall:/apps/install/foo.jar", "bundle:foo"));
+        final OsgiInstallerHealthCheck healthCheck = healthCheck(configuration, resourceGroups);
+        assertThat(healthCheck.execute().getStatus(), equalTo(Result.Status.CRITICAL));
+
+        // the URL has the same hash code but no longer matches the prefix
+        final String collidingUrl = "jcrinstall:/bQps/install/foo.jar";
+        assertThat(collidingUrl.hashCode(), equalTo("jcrinstall:/apps/install/foo.jar".hashCode()));
+        final List<ResourceGroup> changedGroups = new ArrayList<>();
+        changedGroups.add(resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.INSTALL, collidingUrl, "bundle:foo"));
+        final InfoProvider infoProvider = (InfoProvider) FieldUtils.readDeclaredField(healthCheck, "infoProvider", true);
+        when(infoProvider.getInstallationState().getInstalledResources()).thenReturn(changedGroups);
+        assertThat(healthCheck.execute().getStatus(), equalTo(Result.Status.OK));
+        assertThat(healthCheck.getMetrics().getMemoizationHits(), equalTo(0L));
+    }
+
+    @Test
+    public void testMessagesAreOnlyRenderedWhenRequested() throws IllegalAccessException {
+        final OsgiInstallerHealthCheckConfiguration configuration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(configuration.urlPrefixes()).thenReturn(new String[]{"jcrinstall:/apps/"});
+        when(configuration.checkConfigurations()).thenReturn(true);
+        when(configuration.checkBundles()).thenReturn(true);
+
+        final List<ResourceGroup> resourceGroups = new ArrayList<>();
+        final ResourceGroup bundleGroup = resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.IGNORED, "jcrinstall:/apps/install/foo.jar", "bundle:foo");
+        resourceGroups.add(bundleGroup);
+        final AtomicInteger numToStringCalls = new AtomicInteger();
+        when(bundleGroup.getResources().get(0).toString()).then(invocation -> "bundle-foo-" + numToStringCalls.incrementAndGet());
+        final HealthCheck healthCheck = healthCheck(configuration, resourceGroups);
+
+        final Result result = healthCheck.execute();
+        assertThat(result.getStatus(), equalTo(Result.Status.CRITICAL));
+        assertThat(result.isOk(), equalTo(false));
+        assertThat(numToStringCalls.get(), equalTo(0));
+
+        final List<ResultLog.Entry> entries = new ArrayList<>();
+        result.forEach(entries::add);
+        assertThat(entries.size(), equalTo(3));
+        assertThat(entries.get(0).getStatus(), equalTo(Result.Status.CRITICAL));
+        assertThat(entries.get(0).getMessage(), equalTo("The installer state of the OSGi bundle resource 'bundle-foo-1' is IGNORED, probably because a later or the same version of that bundle is already installed!"));
+        assertThat(entries.get(1).getStatus(), equalTo(Result.Status.OK));
+        assertThat(entries.get(1).getMessage(), equalTo("Checked 1 OSGi bundle and 0 configuration groups."));
+        assertThat(entries.get(2).getMessage(), containsString("https://sling.apache.org/documentation/bundles/osgi-installer.html#health-check"));
+        // rendered only once
+        result.forEach(entries::add);
+        assertThat(result.toString(), containsString("bundle-foo-1"));
+        assertThat(numToStringCalls.get(), equalTo(1));
+    }
+
+    @Test
+    public void testMetrics() throws IllegalAccessException {
+        final OsgiInstallerHealthCheckConfiguration configuration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(configuration.urlPrefixes()).thenReturn(new String[]{"jcrinstall:/apps/"});
+        when(configuration.checkConfigurations()).thenReturn(true);
+        when(configuration.checkBundles()).thenReturn(true);
+        when(configuration.skipEntityIds()).thenReturn(new String[]{"bundle:skipped"});
+
+        final List<ResourceGroup> resourceGroups = new ArrayList<>();
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.IGNORED, "jcrinstall:/apps/install/foo.jar", "bundle:foo"));
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.INSTALL, "jcrinstall:/apps/install/bar.jar", "bundle:bar"));
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.INSTALL, "jcrinstall:/apps/install/skipped.jar", "bundle:skipped"));
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_CONFIG, ResourceState.INSTALLED, "jcrinstall:/apps/config/foo.config", "config:foo"));
+        final OsgiInstallerHealthCheck healthCheck = healthCheck(configuration, resourceGroups);
+
+        healthCheck.execute();
+        healthCheck.execute();
+        final ExecutionMetrics metrics = healthCheck.getMetrics();
+        assertThat(metrics.getExecutionCount(), equalTo(2L));
+        assertThat(metrics.getGroupsScanned(), equalTo(8L));
+        assertThat(metrics.getGroupsEvaluated(), equalTo(8L));
+        assertThat(metrics.getResourcesScanned(), equalTo(8L));
+        assertThat(metrics.getResourcesSkipped(), equalTo(2L));
+        assertThat(metrics.getResourcesFailing(), equalTo(4L));
+        assertThat(metrics.getResourcesIgnored(), equalTo(2L));
+        assertThat(metrics.getMinExecutionTimeNanos() > 0, equalTo(true));
+        assertThat(metrics.getMaxExecutionTimeNanos() >= metrics.getMinExecutionTimeNanos(), equalTo(true));
+        assertThat(metrics.getExecutionTimePercentileNanos(100) >= metrics.getMaxExecutionTimeNanos(), equalTo(true));
+        assertThat(metrics.getTotalEvaluationTimeNanos() + metrics.getTotalStateRetrievalTimeNanos(), equalTo(metrics.getTotalExecutionTimeNanos()));
+    }
+
+    @Test
+    public void testMaxReportedResources() throws IllegalAccessException {
+        final OsgiInstallerHealthCheckConfiguration configuration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(configuration.urlPrefixes()).thenReturn(new String[]{"jcrinstall:/apps/"});
+        when(configuration.checkConfigurations()).thenReturn(true);
+        when(configuration.checkBundles()).thenReturn(true);
+        when(configuration.maxReportedResources()).thenReturn(2);
+
+        final List<ResourceGroup> resourceGroups = new ArrayList<>();
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_CONFIG, ResourceState.INSTALL, "jcrinstall:/apps/config/foo.config", "config:foo"));
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.IGNORED, "jcrinstall:/apps/install/foo.jar", "bundle:foo"));
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_CONFIG, ResourceState.IGNORED, "jcrinstall:/apps/config/bar.config", "config:bar"));
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.INSTALL, "jcrinstall:/apps/install/bar.jar", "bundle:bar"));
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_CONFIG, ResourceState.IGNORED, "jcrinstall:/apps/config/baz.config", "config:baz"));
+        final OsgiInstallerHealthCheck healthCheck = healthCheck(configuration, resourceGroups);
+
+        final Result result = healthCheck.execute();
+        assertThat(result.getStatus(), equalTo(Result.Status.CRITICAL));
+        final List<ResultLog.Entry> entries = new ArrayList<>();
+        result.forEach(entries::add);
+        assertThat(entries.size(), equalTo(5));
+        // bundles first, resources to be installed before ignored ones
+        assertThat(entries.get(0).getMessage(), containsString("bundle resource '" + resourceGroups.get(3).getResources().get(0) + "' is INSTALL"));
+        assertThat(entries.get(1).getMessage(), containsString("bundle resource '" + resourceGroups.get(1).getResources().get(0) + "' is IGNORED"));
+        assertThat(entries.get(2).getStatus(), equalTo(Result.Status.CRITICAL));
+        assertThat(entries.get(2).getMessage(), equalTo("3 more resources are not installed correctly but are not listed, as only 2 resources are reported individually (config/INSTALL: 1, config/IGNORED: 2)."));
+        assertThat(entries.get(3).getMessage(), equalTo("Checked 2 OSGi bundle and 3 configuration groups."));
+    }
+
+    @Test
+    public void testBackgroundScan() throws IllegalAccessException {
+        final OsgiInstallerHealthCheckConfiguration configuration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(configuration.urlPrefixes()).thenReturn(new String[]{"jcrinstall:/apps/"});
+        when(configuration.checkConfigurations()).thenReturn(true);
+        when(configuration.checkBundles()).thenReturn(true);
+        when(configuration.backgroundScanMaxAgeInMs()).thenReturn(TimeUnit.HOURS.toMillis(1));
+
+        final List<ResourceGroup> resourceGroups = new ArrayList<>();
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.INSTALL, "jcrinstall:/apps/install/foo.jar", "bundle:foo"));
+        final OsgiInstallerHealthCheck healthCheck = healthCheck(configuration, new ArrayList<>());
+        when(configuration.backgroundScanIntervalInMs()).thenReturn(TimeUnit.HOURS.toMillis(1));
+        final InfoProvider infoProvider = (InfoProvider) FieldUtils.readDeclaredField(healthCheck, "infoProvider", true);
+        final InstallationState installationState = infoProvider.getInstallationState();
+        final AtomicLong nanoTime = new AtomicLong();
+        FieldUtils.writeDeclaredField(healthCheck, "nanoClock", (LongSupplier) nanoTime::get, true);
+        final CountDownLatch scanReleased = new CountDownLatch(1);
+        final CountDownLatch stuckScanReleased = new CountDownLatch(1);
+        when(installationState.getInstalledResources()).then(invocation -> {
+            scanReleased.await();
+            return resourceGroups;
+        });
+        try {
+            // the scanner is blocked before the first scan has completed
+            healthCheck.configure(configuration);
+            assertThat(healthCheck.execute().getStatus(), equalTo(Result.Status.TEMPORARILY_UNAVAILABLE));
+            scanReleased.countDown();
+            await().atMost(5, TimeUnit.SECONDS).until(() -> healthCheck.execute().getStatus() == Result.Status.CRITICAL);
+            final Result result = healthCheck.execute();
+            assertThat(healthCheck.execute(), sameInstance(result));
+            assertThat(healthCheck.getMetrics().getExecutionCount(), equalTo(1L));
+
+            // the next scan is stuck, therefore the result gets stale
+            when(configuration.backgroundScanMaxAgeInMs()).thenReturn(1L);
+            when(installationState.getInstalledResources()).then(invocation -> {
+                stuckScanReleased.await();
+                return resourceGroups;
+            });
+            healthCheck.configure(configuration);
+            nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+            assertThat(healthCheck.execute(), sameInstance(result));
+            nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+            final Result staleResult = healthCheck.execute();
+            assertThat(staleResult.getStatus(), equalTo(Result.Status.CRITICAL));
+            final List<ResultLog.Entry> entries = new ArrayList<>();
+            staleResult.forEach(entries::add);
+            assertThat(entries.get(entries.size() - 1).getStatus(), equalTo(Result.Status.WARN));
+            assertThat(entries.get(entries.size() - 1).getMessage(), containsString("is 2 ms old, which exceeds the maximum age of 1 ms"));
+        } finally {
+            scanReleased.countDown();
+            stuckScanReleased.countDown();
+            healthCheck.deactivate();
+        }
+    }
+
+    @Test
+    public void testConcurrentExecutionsShareOneEvaluation() throws Exception {
+        final int numThreads = 16;
+        final int numBursts = 20;
+        final OsgiInstallerHealthCheckConfiguration configuration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(configuration.urlPrefixes()).thenReturn(new String[]{"jcrinstall:/apps/"});
+        when(configuration.checkConfigurations()).thenReturn(true);
+        when(configuration.checkBundles()).thenReturn(true);
+
+        final List<ResourceGroup> resourceGroups = new ArrayList<>();
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.INSTALL, "jcrinstall:/apps/install/foo.jar", "bundle:foo"));
+        final OsgiInstallerHealthCheck healthCheck = healthCheck(configuration, resourceGroups);
+        final InfoProvider infoProvider = (InfoProvider) FieldUtils.readDeclaredField(healthCheck, "infoProvider", true);
+        final InstallationState installationState = infoProvider.getInstallationState();
+        final AtomicInteger numStateRetrievals = new AtomicInteger();
+        final AtomicInteger expectedJoinedExecutions = new AtomicInteger();
+        // keep the evaluation running until all other threads of the burst are waiting for it
+        when(infoProvider.getInstallationState()).then(invocation -> {
+            numStateRetrievals.incrementAndGet();
+            await().atMost(10, TimeUnit.SECONDS).until(() -> healthCheck.getMetrics().getJoinedExecutions() == expectedJoinedExecutions.get());
+            return installationState;
+        });
+
+        final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            for (int burst = 1; burst <= numBursts; burst++) {
+                expectedJoinedExecutions.addAndGet(numThreads - 1);
+                final List<Future<Result>> futures = new ArrayList<>();
+                for (int i = 0; i < numThreads; i++) {
+                    futures.add(executor.submit(healthCheck::execute));
+                }
+                final Result result = futures.get(0).get(10, TimeUnit.SECONDS);
+                assertThat(result.getStatus(), equalTo(Result.Status.CRITICAL));
+                for (Future<Result> future : futures) {
+                    assertThat(future.get(10, TimeUnit.SECONDS), sameInstance(result));
+                }
+                assertThat(numStateRetrievals.get(), equalTo(burst));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(healthCheck.getMetrics().getExecutionCount(), equalTo((long) numBursts));
+    }
+
+    @Test
+    public void testEventStormIsCoalesced() throws IllegalAccessException {
+        final OsgiInstallerHealthCheckConfiguration configuration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(configuration.urlPrefixes()).thenReturn(new String[]{"jcrinstall:/apps/"});
+        when(configuration.checkConfigurations()).thenReturn(true);
+        when(configuration.checkBundles()).thenReturn(true);
+        when(configuration.eventDrivenEvaluation()).thenReturn(true);
+        when(configuration.eventDebounceInMs()).thenReturn(100L);
+
+        final List<ResourceGroup> resourceGroups = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            resourceGroups.add(resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.INSTALLED, "jcrinstall:/apps/install/" + i + ".jar", "bundle:" + i));
+        }
+        final OsgiInstallerHealthCheck healthCheck = healthCheck(configuration, resourceGroups);
+        // the scans only run when the test runs the scheduled tasks
+        final ScheduledExecutorService executor = mock(ScheduledExecutorService.class);
+        FieldUtils.writeDeclaredField(healthCheck, "backgroundScanExecutors", (Supplier<ScheduledExecutorService>) () -> executor, true);
+        when(configuration.backgroundScanIntervalInMs()).thenReturn(TimeUnit.HOURS.toMillis(1));
+        healthCheck.configure(configuration);
+        try {
+            final ExecutionMetrics metrics = healthCheck.getMetrics();
+            final ArgumentCaptor<Runnable> periodicScan = ArgumentCaptor.forClass(Runnable.class);
+            verify(executor).scheduleWithFixedDelay(periodicScan.capture(), eq(0L), eq(TimeUnit.HOURS.toMillis(1)), eq(TimeUnit.MILLISECONDS));
+            periodicScan.getValue().run();
+            assertThat(metrics.getExecutionCount(), equalTo(1L));
+            assertThat(metrics.getGroupsEvaluated(), equalTo(100L));
+
+            // thousands of events for three entities only lead to one scan per debounce delay, each evaluating three groups
+            final List<InstallationEvent> events = new ArrayList<>();
+            events.add(installationEvent(InstallationEvent.TYPE.STARTED, null));
+            for (int i = 0; i < 3; i++) {
+                events.add(installationEvent(InstallationEvent.TYPE.PROCESSED, resourceGroups.get(i).getResources().get(0)));
+            }
+            events.add(installationEvent(InstallationEvent.TYPE.SUSPENDED, null));
+            for (int window = 1; window <= 3; window++) {
+                for (int i = 0; i < 1000; i++) {
+                    events.forEach(healthCheck::onEvent);
+                }
+                final ArgumentCaptor<Runnable> debouncedScan = ArgumentCaptor.forClass(Runnable.class);
+                verify(executor, times(window)).schedule(debouncedScan.capture(), eq(100L), eq(TimeUnit.MILLISECONDS));
+                assertThat(metrics.getExecutionCount(), equalTo((long) window));
+                debouncedScan.getValue().run();
+                assertThat(metrics.getExecutionCount(), equalTo(window + 1L));
+                assertThat(metrics.getGroupsEvaluated(), equalTo(100L + 3 * window));
+            }
+            assertThat(healthCheck.execute().getStatus(), equalTo(Result.Status.OK));
+        } finally {
+            healthCheck.deactivate();
+        }
+        verify(executor).shutdownNow();
+    }
+
+    @Test
+    public void testConvergence() throws Exception {
+        final OsgiInstallerHealthCheckConfiguration configuration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(configuration.urlPrefixes()).thenReturn(new String[]{"jcrinstall:/apps/"});
+        when(configuration.checkConfigurations()).thenReturn(true);
+        when(configuration.checkBundles()).thenReturn(true);
+
+        final List<ResourceGroup> resourceGroups = new ArrayList<>();
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.INSTALL, "jcrinstall:/apps/install/foo.jar", "bundle:foo"));
+        final OsgiInstallerHealthCheck healthCheck = healthCheck(configuration, resourceGroups);
+        final InfoProvider infoProvider = (InfoProvider) FieldUtils.readDeclaredField(healthCheck, "infoProvider", true);
+        final InstallationState installationState = infoProvider.getInstallationState();
+        when(installationState.getActiveResources()).thenReturn(resourceGroups);
+        try {
+            final CompletableFuture<Result> converged = healthCheck.converged();
+            verify(installationState, timeout(5000)).getActiveResources();
+            try {
+                healthCheck.awaitConverged(Duration.ZERO);
+                fail("Installer has still active resources");
+            } catch (TimeoutException e) {
+                // expected
+            }
+            verify(installationState, timeout(5000).times(2)).getActiveResources();
+            assertThat(converged.isDone(), equalTo(false));
+            // the check is only repeated once the installer signals that it finished processing
+            clearInvocations(installationState);
+            when(installationState.getActiveResources()).thenReturn(Collections.emptyList());
+            final Object convergenceTracker = FieldUtils.readDeclaredField(healthCheck, "convergenceTracker", true);
+            assertThat(((AtomicBoolean) FieldUtils.readDeclaredField(convergenceTracker, "checkPending", true)).get(), equalTo(false));
+            verify(installationState, never()).getActiveResources();
+            verify(installationState, never()).getInstalledResources();
+            assertThat(converged.isDone(), equalTo(false));
+            healthCheck.onEvent(installationEvent(InstallationEvent.TYPE.SUSPENDED, null));
+            assertThat(converged.get(5, TimeUnit.SECONDS).getStatus(), equalTo(Result.Status.CRITICAL));
+            // an already converged installer is detected right away
+            assertThat(healthCheck.awaitConverged(Duration.ofSeconds(5)).getStatus(), equalTo(Result.Status.CRITICAL));
+        } finally {
+            healthCheck.deactivate();
+        }
+        assertThat(healthCheck.converged().isCompletedExceptionally(), equalTo(true));
+    }
+
+    @Test
+    public void testOnlyChangedGroupsAreEvaluatedAgain() throws IllegalAccessException {
+        final OsgiInstallerHealthCheckConfiguration configuration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(configuration.urlPrefixes()).thenReturn(new String[]{"jcrinstall:/apps/"});
+        when(configuration.checkConfigurations()).thenReturn(true);
+        when(configuration.checkBundles()).thenReturn(true);
+        when(configuration.memoizeResults()).thenReturn(true);
+
+        final List<ResourceGroup> resourceGroups = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            resourceGroups.add(resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.INSTALLED, "jcrinstall:/apps/install/" + i + ".jar", "bundle:" + i));
+        }
+        final OsgiInstallerHealthCheck healthCheck = healthCheck(configuration, resourceGroups);
+        final ExecutionMetrics metrics = healthCheck.getMetrics();
+        assertThat(healthCheck.execute().getStatus(), equalTo(Result.Status.OK));
+        assertThat(metrics.getGroupsEvaluated(), equalTo(10L));
+
+        when(resourceGroups.get(3).getResources().get(0).getState()).thenReturn(ResourceState.IGNORED);
+        final Result result = healthCheck.execute();
+        assertThat(result.getStatus(), equalTo(Result.Status.CRITICAL));
+        assertThat(result.toString(), containsString("Checked 10 OSGi bundle and 0 configuration groups."));
+        assertThat(metrics.getGroupsEvaluated(), equalTo(11L));
+
+        // disappeared groups are no longer reported
+        resourceGroups.remove(3);
+        assertThat(healthCheck.execute().getStatus(), equalTo(Result.Status.OK));
+        assertThat(metrics.getGroupsEvaluated(), equalTo(11L));
+
+        // changed rules lead to a full evaluation
+        healthCheck.configure(configuration);
+        healthCheck.execute();
+        assertThat(metrics.getGroupsEvaluated(), equalTo(20L));
+    }
+
+    @Test
+    public void testSingleInstanceRetrievesNewInstallerState() throws IllegalAccessException {
+        final OsgiInstallerHealthCheckConfiguration configuration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(configuration.urlPrefixes()).thenReturn(new String[]{"jcrinstall:/apps/"});
+        when(configuration.checkConfigurations()).thenReturn(true);
+        when(configuration.checkBundles()).thenReturn(true);
+
+        final List<ResourceGroup> resourceGroups = new ArrayList<>();
+        final ResourceGroup bundleGroup = resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.INSTALL, "jcrinstall:/apps/install/foo.jar", "bundle:foo");
+        resourceGroups.add(bundleGroup);
+        final OsgiInstallerHealthCheck healthCheck = healthCheck(configuration, resourceGroups);
+        final InfoProvider infoProvider = (InfoProvider) FieldUtils.readDeclaredField(healthCheck, "infoProvider", true);
+
+        // changes are seen right away, even without an installer event
+        assertThat(healthCheck.execute().getStatus(), equalTo(Result.Status.CRITICAL));
+        when(bundleGroup.getResources().get(0).getState()).thenReturn(ResourceState.INSTALLED);
+        assertThat(healthCheck.execute().getStatus(), equalTo(Result.Status.OK));
+        verify(infoProvider, times(2)).getInstallationState();
+    }
+
+    @Test
+    public void testSeverityWarn() throws IllegalAccessException {
+        final OsgiInstallerHealthCheckConfiguration configuration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(configuration.urlPrefixes()).thenReturn(new String[]{"jcrinstall:/libs/"});
+        when(configuration.checkConfigurations()).thenReturn(true);
+        when(configuration.checkBundles()).thenReturn(true);
+        when(configuration.severity()).thenReturn("WARN");
+
+        final List<ResourceGroup> resourceGroups = new ArrayList<>();
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.INSTALL, "jcrinstall:/libs/install/foo.jar", "bundle:foo"));
+        final Result result = healthCheck(configuration, resourceGroups).execute();
+        assertThat(result.getStatus(), equalTo(Result.Status.WARN));
+        assertThat(result.toString(), containsString("The installer state of the OSGi bundle resource"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testInvalidSeverity() {
+        final OsgiInstallerHealthCheckConfiguration configuration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(configuration.severity()).thenReturn("OK");
+        new OsgiInstallerHealthCheck().configure(configuration);
+    }
+
+    @Test
+    public void testInstancesShareOneTraversal() throws IllegalAccessException {
+        final OsgiInstallerHealthCheckConfiguration appsConfiguration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(appsConfiguration.urlPrefixes()).thenReturn(new String[]{"jcrinstall:/apps/"});
+        when(appsConfiguration.checkConfigurations()).thenReturn(true);
+        when(appsConfiguration.checkBundles()).thenReturn(true);
+        when(appsConfiguration.sharedEvaluation()).thenReturn(true);
+        final OsgiInstallerHealthCheckConfiguration libsConfiguration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(libsConfiguration.urlPrefixes()).thenReturn(new String[]{"jcrinstall:/libs/"});
+        when(libsConfiguration.checkConfigurations()).thenReturn(true);
+        when(libsConfiguration.checkBundles()).thenReturn(true);
+        when(libsConfiguration.severity()).thenReturn("WARN");
+        when(libsConfiguration.sharedEvaluation()).thenReturn(true);
+
+        final List<ResourceGroup> resourceGroups = new ArrayList<>();
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.INSTALLED, "jcrinstall:/apps/install/foo.jar", "bundle:foo"));
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_CONFIG, ResourceState.INSTALL, "jcrinstall:/libs/config/bar.cfg", "config:bar"));
+        final InstallationState snapshot = mock(InstallationState.class);
+        when(snapshot.getInstalledResources()).thenReturn(resourceGroups);
+        final InstallationStateSnapshotService snapshotService = mock(InstallationStateSnapshotService.class);
+        when(snapshotService.getSnapshot()).thenReturn(snapshot);
+        final SharedInstallerStateEvaluator sharedEvaluator = new SharedInstallerStateEvaluator();
+        FieldUtils.writeDeclaredField(sharedEvaluator, "snapshotService", snapshotService, true);
+
+        final OsgiInstallerHealthCheck appsHealthCheck = healthCheck(appsConfiguration, resourceGroups);
+        FieldUtils.writeDeclaredField(appsHealthCheck, "sharedEvaluator", sharedEvaluator, true);
+        final OsgiInstallerHealthCheck libsHealthCheck = healthCheck(libsConfiguration, resourceGroups);
+        FieldUtils.writeDeclaredField(libsHealthCheck, "sharedEvaluator", sharedEvaluator, true);
+
+        // a single instance evaluates on its own
+        assertThat(appsHealthCheck.execute().getStatus(), equalTo(Result.Status.OK));
+        assertThat(sharedEvaluator.getNumTraversals(), equalTo(0L));
+
+        // as soon as there are two instances, both are evaluated together once per snapshot
+        assertThat(libsHealthCheck.execute().getStatus(), equalTo(Result.Status.WARN));
+        assertThat(appsHealthCheck.execute().getStatus(), equalTo(Result.Status.OK));
+        assertThat(libsHealthCheck.execute().getStatus(), equalTo(Result.Status.WARN));
+        assertThat(sharedEvaluator.getNumTraversals(), equalTo(1L));
+        assertThat(appsHealthCheck.getMetrics().getGroupsEvaluated() + libsHealthCheck.getMetrics().getGroupsEvaluated(), equalTo(4L));
+
+        // a new snapshot leads to another traversal
+        final InstallationState newSnapshot = mock(InstallationState.class);
+        when(newSnapshot.getInstalledResources()).thenReturn(resourceGroups.subList(0, 1));
+        when(snapshotService.getSnapshot()).thenReturn(newSnapshot);
+        assertThat(appsHealthCheck.execute().getStatus(), equalTo(Result.Status.OK));
+        assertThat(libsHealthCheck.execute().getStatus(), equalTo(Result.Status.OK));
+        assertThat(sharedEvaluator.getNumTraversals(), equalTo(2L));
+
+        // an instance without shared evaluation is evaluated on its own
+        final OsgiInstallerHealthCheckConfiguration separateConfiguration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(separateConfiguration.urlPrefixes()).thenReturn(new String[]{"jcrinstall:/apps/"});
+        when(separateConfiguration.checkBundles()).thenReturn(true);
+        final OsgiInstallerHealthCheck separateHealthCheck = healthCheck(separateConfiguration, resourceGroups);
+        FieldUtils.writeDeclaredField(separateHealthCheck, "sharedEvaluator", sharedEvaluator, true);
+        assertThat(separateHealthCheck.execute().getStatus(), equalTo(Result.Status.OK));
+        assertThat(separateHealthCheck.getMetrics().getGroupsEvaluated(), equalTo(2L));
+        assertThat(sharedEvaluator.getNumTraversals(), equalTo(2L));
+
+        // a removed instance is no longer evaluated
+        libsHealthCheck.deactivate();
+        assertThat(appsHealthCheck.execute().getStatus(), equalTo(Result.Status.OK));
+        assertThat(sharedEvaluator.getNumTraversals(), equalTo(2L));
+    }
+
+    @Test
+    public void testSharedEvaluationRejectsOptionsOfSeparateEvaluation() {
+        final OsgiInstallerHealthCheckConfiguration configuration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(configuration.sharedEvaluation()).thenReturn(true);
+        when(configuration.parallelism()).thenReturn(4);
+        when(configuration.timeBudgetInMs()).thenReturn(100L);
+        try {
+            new OsgiInstallerHealthCheck().configure(configuration);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), equalTo("Invalid configuration in 'sharedEvaluation': Cannot be combined with [parallelism, timeBudgetInMs] as the groups are evaluated together with the other configurations"));
+        }
+    }
+
+    @Test
+    public void testConflictingOptionsAreRejected() {
+        final OsgiInstallerHealthCheckConfiguration budgetConfiguration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(budgetConfiguration.timeBudgetInMs()).thenReturn(100L);
+        when(budgetConfiguration.backgroundScanIntervalInMs()).thenReturn(1000L);
+        when(budgetConfiguration.eventDrivenEvaluation()).thenReturn(true);
+        when(budgetConfiguration.parallelism()).thenReturn(4);
+        try {
+            new OsgiInstallerHealthCheck().configure(budgetConfiguration);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), equalTo("Invalid configuration in 'timeBudgetInMs': Cannot be combined with [backgroundScanIntervalInMs, eventDrivenEvaluation, parallelism] as the groups are evaluated sequentially, spread over several executions"));
+        }
+
+        final OsgiInstallerHealthCheckConfiguration eventDrivenConfiguration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(eventDrivenConfiguration.eventDrivenEvaluation()).thenReturn(true);
+        when(eventDrivenConfiguration.memoizeResults()).thenReturn(true);
+        try {
+            new OsgiInstallerHealthCheck().configure(eventDrivenConfiguration);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), equalTo("Invalid configuration in 'eventDrivenEvaluation': Cannot be combined with [memoizeResults] as the verdicts of unchanged groups are reused anyhow"));
+        }
+    }
+
+    @Test
+    public void testStatusOnlyStopsAtFirstFailingGroup() throws IllegalAccessException {
+        final OsgiInstallerHealthCheckConfiguration configuration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(configuration.urlPrefixes()).thenReturn(new String[]{"jcrinstall:/apps/"});
+        when(configuration.checkConfigurations()).thenReturn(true);
+        when(configuration.checkBundles()).thenReturn(true);
+        when(configuration.skipEntityIds()).thenReturn(new String[]{"bundle:skipped"});
+
+        final List<ResourceGroup> resourceGroups = new ArrayList<>();
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.INSTALLED, "jcrinstall:/apps/install/foo.jar", "bundle:foo"));
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.INSTALL, "jcrinstall:/apps/install/skipped.jar", "bundle:skipped"));
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_CONFIG, ResourceState.IGNORED, "jcrinstall:/apps/config/bar.cfg", "config:bar"));
+        final ResourceGroup notEvaluatedGroup = mock(ResourceGroup.class);
+        resourceGroups.add(notEvaluatedGroup);
+        final OsgiInstallerHealthCheck healthCheck = healthCheck(configuration, resourceGroups);
+
+        final Result result = healthCheck.executeStatusOnly();
+        assertThat(result.getStatus(), equalTo(Result.Status.CRITICAL));
+        assertThat(result.toString(), containsString("Status only"));
+        verify(notEvaluatedGroup, times(0)).getResources();
+        assertThat(healthCheck.getMetrics().getExecutionCount(), equalTo(0L));
+
+        when(resourceGroups.get(2).getResources().get(0).getState()).thenReturn(ResourceState.INSTALLED);
+        resourceGroups.remove(notEvaluatedGroup);
+        assertThat(healthCheck.executeStatusOnly().getStatus(), equalTo(Result.Status.OK));
+    }
+
+    @Test
+    public void testStatusOnlyHealthCheckIsRegisteredWithTags() throws IllegalAccessException {
+        final OsgiInstallerHealthCheckConfiguration configuration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(configuration.hc_name()).thenReturn("Installer");
+        when(configuration.statusOnlyTags()).thenReturn(new String[]{"readiness"});
+        final BundleContext bundleContext = mock(BundleContext.class);
+        @SuppressWarnings("unchecked")
+        final ServiceRegistration<HealthCheck> registration = mock(ServiceRegistration.class);
+        when(bundleContext.registerService(eq(HealthCheck.class), any(HealthCheck.class), argThat(properties -> "Installer (status only)".equals(properties.get(HealthCheck.NAME)))))
+                .thenReturn(registration);
+        final OsgiInstallerHealthCheck healthCheck = new OsgiInstallerHealthCheck();
+        healthCheck.activate(bundleContext, configuration);
+        verify(bundleContext).registerService(eq(HealthCheck.class), any(HealthCheck.class),
+                argThat(properties -> Arrays.equals(new String[]{"readiness"}, (String[]) properties.get(HealthCheck.TAGS))));
+
+        // unchanged tags do not lead to another registration
+        healthCheck.configure(configuration);
+        verify(bundleContext, times(1)).registerService(eq(HealthCheck.class), any(HealthCheck.class), any());
+
+        when(configuration.statusOnlyTags()).thenReturn(new String[]{});
+        healthCheck.configure(configuration);
+        verify(registration).unregister();
+    }
+
+    @Test
+    public void testTimeBudget() throws IllegalAccessException {
+        final OsgiInstallerHealthCheckConfiguration configuration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(configuration.urlPrefixes()).thenReturn(new String[]{"jcrinstall:/apps/"});
+        when(configuration.checkConfigurations()).thenReturn(true);
+        when(configuration.checkBundles()).thenReturn(true);
+        when(configuration.memoizeResults()).thenReturn(true);
+        when(configuration.timeBudgetInMs()).thenReturn(10L);
+
+        final AtomicLong nanoTime = new AtomicLong();
+        final List<ResourceGroup> resourceGroups = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            final ResourceGroup group = resourceGroup(InstallableResource.TYPE_BUNDLE, i == 150 ? ResourceState.INSTALL : ResourceState.INSTALLED, "jcrinstall:/apps/install/" + i + ".jar", "bundle:" + i);
+            final List<Resource> resources = group.getResources();
+            // every access to a group takes 1 ms
+            when(group.getResources()).thenAnswer(invocation -> {
+                nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+                return resources;
+            });
+            resourceGroups.add(group);
+        }
+        final OsgiInstallerHealthCheck healthCheck = healthCheck(configuration, resourceGroups);
+        FieldUtils.writeDeclaredField(healthCheck, "nanoClock", (LongSupplier) nanoTime::get, true);
+        final InfoProvider infoProvider = (InfoProvider) FieldUtils.readDeclaredField(healthCheck, "infoProvider", true);
+
+        // the deadline is only checked every 64 groups
+        Result result = healthCheck.execute();
+        assertThat(result.getStatus(), equalTo(Result.Status.TEMPORARILY_UNAVAILABLE));
+        assertThat(result.toString(), containsString("64 of 200 groups"));
+        result = healthCheck.execute();
+        assertThat(result.getStatus(), equalTo(Result.Status.TEMPORARILY_UNAVAILABLE));
+        assertThat(result.toString(), containsString("128 of 200 groups"));
+        result = healthCheck.execute();
+        assertThat(result.getStatus(), equalTo(Result.Status.TEMPORARILY_UNAVAILABLE));
+        assertThat(result.toString(), containsString("192 of 200 groups"));
+        // the pass is continued on the same state
+        verify(infoProvider, times(1)).getInstallationState();
+        result = healthCheck.execute();
+        assertThat(result.getStatus(), equalTo(Result.Status.CRITICAL));
+        assertThat(result.toString(), containsString("Checked 200 OSGi bundle and 0 configuration groups."));
+        assertThat(healthCheck.getMetrics().getGroupsEvaluated(), equalTo(200L));
+
+        // the next pass reports the last complete result until it is complete
+        result = healthCheck.execute();
+        assertThat(result.getStatus(), equalTo(Result.Status.CRITICAL));
+        assertThat(result.toString(), containsString("Partial evaluation: 64 of 200 groups"));
+        assertThat(result.toString(), containsString("Checked 200 OSGi bundle and 0 configuration groups."));
+        verify(infoProvider, times(2)).getInstallationState();
+
+        // an installer event discards the pass, the next one starts from the beginning on the current state
+        healthCheck.onEvent(installationEvent(InstallationEvent.TYPE.SUSPENDED, null));
+        result = healthCheck.execute();
+        assertThat(result.toString(), containsString("Partial evaluation: 64 of 200 groups"));
+        verify(infoProvider, times(3)).getInstallationState();
+        result = healthCheck.execute();
+        assertThat(result.toString(), containsString("Partial evaluation: 128 of 200 groups"));
+        verify(infoProvider, times(3)).getInstallationState();
+    }
+
+    @Test
+    public void testInterruptedEvaluationStopsRightAway() throws Exception {
+        final OsgiInstallerHealthCheckConfiguration configuration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(configuration.urlPrefixes()).thenReturn(new String[]{"jcrinstall:/apps/"});
+        when(configuration.checkConfigurations()).thenReturn(true);
+        when(configuration.checkBundles()).thenReturn(true);
+
+        final List<Resource> resources = resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.INSTALLED, "jcrinstall:/apps/install/foo.jar", "bundle:foo").getResources();
+        final int interruptedGroup = 500;
+        final AtomicInteger numEvaluatedGroups = new AtomicInteger();
+        final CountDownLatch interruptedGroupReached = new CountDownLatch(1);
+        final CountDownLatch cancelled = new CountDownLatch(1);
+        final ResourceGroup group = new ResourceGroup() {
+            @Override
+            public List<Resource> getResources() {
+                if (numEvaluatedGroups.incrementAndGet() == interruptedGroup) {
+                    interruptedGroupReached.countDown();
+                    // the interruption happens while this group is evaluated, without this group reacting to it
+                    boolean interrupted = false;
+                    while (true) {
+                        try {
+                            cancelled.await();
+                            break;
+                        } catch (InterruptedException e) {
+                            interrupted = true;
+                        }
+                    }
+                    if (interrupted) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return resources;
+            }
+
+            @Override
+            public String getAlias() {
+                return null;
+            }
+        };
+        final List<ResourceGroup> resourceGroups = Collections.nCopies(100000, group);
+        final OsgiInstallerHealthCheck healthCheck = healthCheck(configuration, resourceGroups);
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<Result> result = executor.submit(healthCheck::execute);
+            assertThat(interruptedGroupReached.await(5, TimeUnit.SECONDS), equalTo(true));
+            result.cancel(true);
+            cancelled.countDown();
+            executor.shutdown();
+            assertThat(executor.awaitTermination(5, TimeUnit.SECONDS), equalTo(true));
+            // the evaluation stops before the next group
+            assertThat(numEvaluatedGroups.get(), equalTo(interruptedGroup));
+        } finally {
+            cancelled.countDown();
+            executor.shutdownNow();
+        }
+
+        // the result of an interrupted execution is clearly marked
+        Thread.currentThread().interrupt();
+        try {
+            final Result result = healthCheck.execute();
+            assertThat(result.getStatus(), equalTo(Result.Status.TEMPORARILY_UNAVAILABLE));
+            assertThat(result.toString(), containsString("interrupted"));
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test
+    public void testInspectEntity() throws IllegalAccessException {
+        final OsgiInstallerHealthCheckConfiguration configuration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(configuration.urlPrefixes()).thenReturn(new String[]{"jcrinstall:/apps/", "jcrinstall:/apps/install/"});
+        when(configuration.skipEntityIds()).thenReturn(new String[]{"bundle:skipped"});
+        when(configuration.checkConfigurations()).thenReturn(true);
+        when(configuration.checkBundles()).thenReturn(true);
+
+        final List<ResourceGroup> resourceGroups = new ArrayList<>();
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.INSTALL, "jcrinstall:/apps/install/foo.jar", "bundle:foo"));
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.IGNORED, "jcrinstall:/apps/install/skipped.jar", "bundle:skipped"));
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_CONFIG, ResourceState.INSTALL, "launchpad:resources/config/bar.cfg", "config:bar"));
+        final OsgiInstallerHealthCheck healthCheck = healthCheck(configuration, resourceGroups);
+
+        final EntityDecision reported = healthCheck.inspect("bundle:foo");
+        assertThat(reported.getEntityId(), equalTo("bundle:foo"));
+        assertThat(reported.isConsidered(), equalTo(true));
+        assertThat(reported.getStatus(), equalTo(Result.Status.CRITICAL));
+        assertThat(reported.getResources().get(0).getMatchedUrlPrefix(), equalTo("jcrinstall:/apps/install/"));
+        assertThat(reported.getResources().get(0).isSkipListHit(), equalTo(false));
+        assertThat(reported.getResources().get(0).getDecision(), containsString("reported"));
+        assertThat(reported.getMessages().size(), equalTo(1));
+        assertThat(reported.getMessages().get(0), containsString("is INSTALL"));
+
+        final EntityDecision skipped = healthCheck.inspect("bundle:skipped");
+        assertThat(skipped.isConsidered(), equalTo(true));
+        assertThat(skipped.getStatus(), equalTo(Result.Status.OK));
+        assertThat(skipped.getResources().get(0).isSkipListHit(), equalTo(true));
+        assertThat(skipped.getResources().get(0).getDecision(), containsString("skip list"));
+        assertThat(skipped.getMessages().isEmpty(), equalTo(true));
+
+        final EntityDecision notConsidered = healthCheck.inspect("config:bar");
+        assertThat(notConsidered.isConsidered(), equalTo(false));
+        assertThat(notConsidered.getStatus(), equalTo(Result.Status.OK));
+        assertThat(notConsidered.getResources().get(0).getMatchedUrlPrefix(), equalTo(null));
+        assertThat(notConsidered.getResources().get(0).getDecision(), containsString("URL prefixes"));
+
+        assertThat(healthCheck.inspect("bundle:unknown"), equalTo(null));
+
+        // the verdicts are the same as the ones of the health check
+        final Result result = healthCheck.execute();
+        assertThat(result.getStatus(), equalTo(Result.Status.CRITICAL));
+        assertThat(result.toString(), containsString(reported.getMessages().get(0)));
+    }
+
+    @Test
+    public void testInspectByPrefix() throws IllegalAccessException {
+        final OsgiInstallerHealthCheckConfiguration configuration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(configuration.urlPrefixes()).thenReturn(new String[]{"jcrinstall:/apps/"});
+        when(configuration.checkConfigurations()).thenReturn(true);
+        when(configuration.checkBundles()).thenReturn(true);
+
+        final List<ResourceGroup> resourceGroups = new ArrayList<>();
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_CONFIG, ResourceState.INSTALLED, "jcrinstall:/apps/config/a.cfg", "config:a"));
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.INSTALLED, "jcrinstall:/apps/install/c.jar", "bundle:c"));
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.INSTALLED, "jcrinstall:/apps/install/a.jar", "bundle:a"));
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.INSTALLED, "jcrinstall:/apps/install/b.jar", "bundle:b"));
+        final OsgiInstallerHealthCheck healthCheck = healthCheck(configuration, resourceGroups);
+
+        final List<EntityDecision> decisions = healthCheck.inspectByPrefix("bundle:", 2);
+        assertThat(decisions.size(), equalTo(2));
+        assertThat(decisions.get(0).getEntityId(), equalTo("bundle:a"));
+        assertThat(decisions.get(1).getEntityId(), equalTo("bundle:b"));
+        assertThat(healthCheck.inspectByPrefix("bundle:", 10).size(), equalTo(3));
+        assertThat(healthCheck.inspectByPrefix("", 10).size(), equalTo(4));
+        assertThat(healthCheck.inspectByPrefix("config:b", 10).isEmpty(), equalTo(true));
+
+        // the index is only built once for the same installer state
+        final Object index = FieldUtils.readDeclaredField(healthCheck, "entityIndex", true);
+        healthCheck.inspect("bundle:a");
+        assertThat(FieldUtils.readDeclaredField(healthCheck, "entityIndex", true), sameInstance(index));
+    }
+
+    @Test
+    public void testInspectReusesEvaluatedInstallerState() throws IllegalAccessException {
+        final OsgiInstallerHealthCheckConfiguration configuration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(configuration.urlPrefixes()).thenReturn(new String[]{"jcrinstall:/apps/"});
+        when(configuration.checkBundles()).thenReturn(true);
+
+        final List<ResourceGroup> resourceGroups = new ArrayList<>();
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.INSTALL, "jcrinstall:/apps/install/a.jar", "bundle:a"));
+        final OsgiInstallerHealthCheck healthCheck = healthCheck(configuration, resourceGroups);
+        final InfoProvider infoProvider = (InfoProvider) FieldUtils.readDeclaredField(healthCheck, "infoProvider", true);
+        final InstallationState installationState = infoProvider.getInstallationState();
+        clearInvocations(infoProvider);
+
+        // without the snapshot service the state retrieved by the evaluation is inspected until the next installer event
+        healthCheck.execute();
+        assertThat(healthCheck.inspect("bundle:a").getStatus(), equalTo(Result.Status.CRITICAL));
+        assertThat(healthCheck.inspectByPrefix("bundle:", 10).size(), equalTo(1));
+        verify(infoProvider, times(1)).getInstallationState();
+
+        final List<ResourceGroup> changedGroups = new ArrayList<>();
+        changedGroups.add(resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.INSTALLED, "jcrinstall:/apps/install/a.jar", "bundle:a"));
+        when(installationState.getInstalledResources()).thenReturn(changedGroups);
+        healthCheck.onEvent(installationEvent(InstallationEvent.TYPE.SUSPENDED, null));
+        assertThat(healthCheck.inspect("bundle:a").getStatus(), equalTo(Result.Status.OK));
+        assertThat(healthCheck.inspect("bundle:a").getStatus(), equalTo(Result.Status.OK));
+        verify(infoProvider, times(2)).getInstallationState();
+    }
+
+    @Test
+    public void testResourceTypeEvaluatorsAreNotMemoized() throws IllegalAccessException {
+        final OsgiInstallerHealthCheckConfiguration configuration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(configuration.urlPrefixes()).thenReturn(new String[]{"jcrinstall:/apps/"});
+        when(configuration.checkBundles()).thenReturn(true);
+        when(configuration.memoizeResults()).thenReturn(true);
+
+        final List<ResourceGroup> resourceGroups = new ArrayList<>();
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.INSTALLED, "jcrinstall:/apps/install/foo.jar", "bundle:foo"));
+        resourceGroups.add(resourceGroup("package", ResourceState.INSTALLED, "jcrinstall:/apps/install/foo.zip", "package:foo"));
+        final OsgiInstallerHealthCheck healthCheck = healthCheck(configuration, resourceGroups);
+        final AtomicInteger numBrokenPackages = new AtomicInteger(1);
+        healthCheck.bindResourceTypeEvaluator(packageEvaluator(numBrokenPackages), Collections.singletonMap(ResourceTypeEvaluator.RESOURCE_TYPES, "package"));
+
+        assertThat(healthCheck.execute().getStatus(), equalTo(Result.Status.CRITICAL));
+        numBrokenPackages.set(0);
+        assertThat(healthCheck.execute().getStatus(), equalTo(Result.Status.OK));
+        assertThat(healthCheck.getMetrics().getMemoizationHits(), equalTo(0L));
+        // the verdict of the bundle group is still reused
+        assertThat(healthCheck.getMetrics().getGroupsEvaluated(), equalTo(3L));
+    }
+
+    @Test
+    public void testResourceTypeEvaluatorsAreNotReusedInEventDrivenEvaluation() throws IllegalAccessException {
+        final OsgiInstallerHealthCheckConfiguration configuration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(configuration.urlPrefixes()).thenReturn(new String[]{"jcrinstall:/apps/"});
+        when(configuration.checkBundles()).thenReturn(true);
+        when(configuration.eventDrivenEvaluation()).thenReturn(true);
+
+        final List<ResourceGroup> resourceGroups = new ArrayList<>();
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.INSTALLED, "jcrinstall:/apps/install/foo.jar", "bundle:foo"));
+        resourceGroups.add(resourceGroup("package", ResourceState.INSTALLED, "jcrinstall:/apps/install/foo.zip", "package:foo"));
+        final OsgiInstallerHealthCheck healthCheck = healthCheck(configuration, resourceGroups);
+        final AtomicInteger numBrokenPackages = new AtomicInteger(1);
+        healthCheck.bindResourceTypeEvaluator(packageEvaluator(numBrokenPackages), Collections.singletonMap(ResourceTypeEvaluator.RESOURCE_TYPES, "package"));
+
+        assertThat(healthCheck.execute().getStatus(), equalTo(Result.Status.CRITICAL));
+        // evaluated again without any installer event
+        numBrokenPackages.set(0);
+        assertThat(healthCheck.execute().getStatus(), equalTo(Result.Status.OK));
+        // the verdict of the bundle group is still reused
+        assertThat(healthCheck.getMetrics().getGroupsEvaluated(), equalTo(3L));
+    }
+
+    @Test
+    public void testResourceTypeEvaluatorsAreNotReusedInSharedEvaluation() throws IllegalAccessException {
+        final OsgiInstallerHealthCheckConfiguration packagesConfiguration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(packagesConfiguration.urlPrefixes()).thenReturn(new String[]{"jcrinstall:/apps/"});
+        when(packagesConfiguration.sharedEvaluation()).thenReturn(true);
+        final OsgiInstallerHealthCheckConfiguration bundlesConfiguration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(bundlesConfiguration.urlPrefixes()).thenReturn(new String[]{"jcrinstall:/apps/"});
+        when(bundlesConfiguration.checkBundles()).thenReturn(true);
+        when(bundlesConfiguration.sharedEvaluation()).thenReturn(true);
+
+        final List<ResourceGroup> resourceGroups = new ArrayList<>();
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.INSTALLED, "jcrinstall:/apps/install/foo.jar", "bundle:foo"));
+        resourceGroups.add(resourceGroup("package", ResourceState.INSTALLED, "jcrinstall:/apps/install/foo.zip", "package:foo"));
+        final InstallationState snapshot = mock(InstallationState.class);
+        when(snapshot.getInstalledResources()).thenReturn(resourceGroups);
+        final InstallationStateSnapshotService snapshotService = mock(InstallationStateSnapshotService.class);
+        when(snapshotService.getSnapshot()).thenReturn(snapshot);
+        final SharedInstallerStateEvaluator sharedEvaluator = new SharedInstallerStateEvaluator();
+        FieldUtils.writeDeclaredField(sharedEvaluator, "snapshotService", snapshotService, true);
+
+        final OsgiInstallerHealthCheck packagesHealthCheck = healthCheck(packagesConfiguration, resourceGroups);
+        FieldUtils.writeDeclaredField(packagesHealthCheck, "sharedEvaluator", sharedEvaluator, true);
+        final AtomicInteger numBrokenPackages = new AtomicInteger(1);
+        packagesHealthCheck.bindResourceTypeEvaluator(packageEvaluator(numBrokenPackages), Collections.singletonMap(ResourceTypeEvaluator.RESOURCE_TYPES, "package"));
+        final OsgiInstallerHealthCheck bundlesHealthCheck = healthCheck(bundlesConfiguration, resourceGroups);
+        FieldUtils.writeDeclaredField(bundlesHealthCheck, "sharedEvaluator", sharedEvaluator, true);
+        packagesHealthCheck.execute();
+
+        assertThat(bundlesHealthCheck.execute().getStatus(), equalTo(Result.Status.OK));
+        assertThat(sharedEvaluator.getNumTraversals(), equalTo(1L));
+        numBrokenPackages.set(0);
+        // the verdicts calculated by the traversal for the other instance are not kept
+        assertThat(packagesHealthCheck.execute().getStatus(), equalTo(Result.Status.OK));
+        assertThat(sharedEvaluator.getNumTraversals(), equalTo(2L));
+        numBrokenPackages.set(1);
+        assertThat(packagesHealthCheck.execute().getStatus(), equalTo(Result.Status.CRITICAL));
+        assertThat(sharedEvaluator.getNumTraversals(), equalTo(3L));
+        // the verdicts of the other instance are still reused within the same snapshot
+        assertThat(bundlesHealthCheck.execute().getStatus(), equalTo(Result.Status.OK));
+        assertThat(sharedEvaluator.getNumTraversals(), equalTo(3L));
+    }
+
+    @Test
+    public void testResourceTypeEvaluatorsAreNotReusedWithinTimeBudget() throws IllegalAccessException {
+        final OsgiInstallerHealthCheckConfiguration configuration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(configuration.urlPrefixes()).thenReturn(new String[]{"jcrinstall:/apps/"});
+        when(configuration.checkBundles()).thenReturn(true);
+        when(configuration.memoizeResults()).thenReturn(true);
+        when(configuration.timeBudgetInMs()).thenReturn(10L);
+
+        final AtomicLong nanoTime = new AtomicLong();
+        final List<ResourceGroup> resourceGroups = new ArrayList<>();
+        resourceGroups.add(resourceGroup("package", ResourceState.INSTALLED, "jcrinstall:/apps/install/foo.zip", "package:foo"));
+        for (int i = 0; i < 99; i++) {
+            final ResourceGroup group = resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.INSTALLED, "jcrinstall:/apps/install/" + i + ".jar", "bundle:" + i);
+            final List<Resource> resources = group.getResources();
+            // every access to a group takes 1 ms
+            when(group.getResources()).thenAnswer(invocation -> {
+                nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+                return resources;
+            });
+            resourceGroups.add(group);
+        }
+        final OsgiInstallerHealthCheck healthCheck = healthCheck(configuration, resourceGroups);
+        FieldUtils.writeDeclaredField(healthCheck, "nanoClock", (LongSupplier) nanoTime::get, true);
+        final AtomicInteger numBrokenPackages = new AtomicInteger(1);
+        healthCheck.bindResourceTypeEvaluator(packageEvaluator(numBrokenPackages), Collections.singletonMap(ResourceTypeEvaluator.RESOURCE_TYPES, "package"));
+
+        assertThat(healthCheck.execute().toString(), containsString("64 of 100 groups"));
+        // the package group is evaluated again by the execution completing the pass
+        numBrokenPackages.set(0);
+        assertThat(healthCheck.execute().getStatus(), equalTo(Result.Status.OK));
+        assertThat(healthCheck.getMetrics().getGroupsEvaluated(), equalTo(101L));
+    }
+
+    /**
+     * @param numBrokenPackages the number of packages which are not installed correctly, all packages are reported as
+     *            long as it is not 0
+     * @return an evaluator whose verdict depends on something else than the installer state
+     */
+    private static ResourceTypeEvaluator packageEvaluator(final AtomicInteger numBrokenPackages) {
+        return new ResourceTypeEvaluator() {
+            @Override
+            public boolean isInstalledCorrectly(Resource resource) {
+                return numBrokenPackages.get() == 0;
+            }
+
+            @Override
+            public String getMessage(Resource resource, ResourceState state) {
+                return "Broken package " + resource.getURL();
+            }
+        };
+    }
+
+    @Test
+    public void testBoundedReportingSummarizesOtherTypesByTypeAndState() throws IllegalAccessException {
+        final OsgiInstallerHealthCheckConfiguration configuration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(configuration.urlPrefixes()).thenReturn(new String[]{"jcrinstall:/apps/"});
+        when(configuration.checkBundles()).thenReturn(true);
+        when(configuration.maxReportedResources()).thenReturn(1);
+
+        final List<ResourceGroup> resourceGroups = new ArrayList<>();
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.INSTALL, "jcrinstall:/apps/install/foo.jar", "bundle:foo"));
+        resourceGroups.add(resourceGroup("file", ResourceState.INSTALLED, "jcrinstall:/apps/install/broken.txt", "file:foo"));
+        resourceGroups.add(resourceGroup("package", ResourceState.UNINSTALL, "jcrinstall:/apps/install/broken.zip", "package:foo"));
+        resourceGroups.add(resourceGroup("file", ResourceState.INSTALLED, "jcrinstall:/apps/install/broken2.txt", "file:bar"));
+        final OsgiInstallerHealthCheck healthCheck = healthCheck(configuration, resourceGroups);
+        final Map<String, Object> properties = new HashMap<>();
+        properties.put(ResourceTypeEvaluator.RESOURCE_TYPES, new String[]{"file", "package"});
+        healthCheck.bindResourceTypeEvaluator(typeEvaluator("Broken"), properties);
+
+        final List<ResultLog.Entry> entries = new ArrayList<>();
+        healthCheck.execute().forEach(entries::add);
+        assertThat(entries.get(1).getMessage(), equalTo("3 more resources are not installed correctly but are not listed, as only 1 resources are reported individually (file/INSTALLED: 2, package/UNINSTALL: 1)."));
+    }
+
+    private static ResourceTypeEvaluator typeEvaluator(final String message) {
+        return new ResourceTypeEvaluator() {
+            @Override
+            public boolean isInstalledCorrectly(Resource resource) {
+                return !resource.getURL().contains("broken");
+            }
+
+            @Override
+            public String getMessage(Resource resource, ResourceState state) {
+                return message + " " + resource.getURL();
+            }
+        };
+    }
+
+    @Test
+    public void testResourceTypeEvaluators() throws IllegalAccessException {
+        final OsgiInstallerHealthCheckConfiguration configuration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(configuration.urlPrefixes()).thenReturn(new String[]{"jcrinstall:/apps/"});
+        when(configuration.checkConfigurations()).thenReturn(true);
+        when(configuration.checkBundles()).thenReturn(true);
+
+        final List<ResourceGroup> resourceGroups = new ArrayList<>();
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.INSTALLED, "jcrinstall:/apps/install/foo.jar", "bundle:foo"));
+        resourceGroups.add(resourceGroup("file", ResourceState.INSTALLED, "jcrinstall:/apps/install/foo.txt", "file:foo"));
+        resourceGroups.add(resourceGroup("file", ResourceState.INSTALLED, "jcrinstall:/apps/install/broken.txt", "file:broken"));
+        final OsgiInstallerHealthCheck healthCheck = healthCheck(configuration, resourceGroups);
+
+        // without an evaluator the type is not checked
+        Result result = healthCheck.execute();
+        assertThat(result.getStatus(), equalTo(Result.Status.OK));
+        assertThat(result.toString(), containsString("Checked 1 OSGi bundle and 0 configuration groups."));
+
+        final ResourceTypeEvaluator fileEvaluator = typeEvaluator("Broken file");
+        healthCheck.bindResourceTypeEvaluator(fileEvaluator, Collections.singletonMap(ResourceTypeEvaluator.RESOURCE_TYPES, "file"));
+        result = healthCheck.execute();
+        assertThat(result.getStatus(), equalTo(Result.Status.CRITICAL));
+        assertThat(result.toString(), containsString("Broken file jcrinstall:/apps/install/broken.txt"));
+        assertThat(result.toString(), containsString("Checked 1 OSGi bundle, 0 configuration and 2 file groups."));
+
+        // the evaluator with the highest ranking wins
+        final ResourceTypeEvaluator rankedEvaluator = typeEvaluator("Ranked");
+        final Map<String, Object> properties = new HashMap<>();
+        properties.put(ResourceTypeEvaluator.RESOURCE_TYPES, new String[]{"file", InstallableResource.TYPE_BUNDLE});
+        properties.put(Constants.SERVICE_RANKING, 10);
+        healthCheck.bindResourceTypeEvaluator(rankedEvaluator, properties);
+        result = healthCheck.execute();
+        assertThat(result.toString(), containsString("Ranked jcrinstall:/apps/install/broken.txt"));
+
+        healthCheck.unbindResourceTypeEvaluator(rankedEvaluator);
+        healthCheck.unbindResourceTypeEvaluator(fileEvaluator);
+        result = healthCheck.execute();
+        assertThat(result.getStatus(), equalTo(Result.Status.OK));
+        assertThat(result.toString(), containsString("Checked 1 OSGi bundle and 0 configuration groups."));
+    }
+
+    @Test
+    public void testVerifyBundleStates() throws IllegalAccessException {
+        final OsgiInstallerHealthCheckConfiguration configuration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(configuration.urlPrefixes()).thenReturn(new String[]{"jcrinstall:/apps/"});
+        when(configuration.checkBundles()).thenReturn(true);
+        when(configuration.verifyBundleStates()).thenReturn(true);
+        when(configuration.memoizeResults()).thenReturn(true);
+
+        final List<ResourceGroup> resourceGroups = new ArrayList<>();
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.INSTALLED, "jcrinstall:/apps/install/active.jar", "bundle:active"));
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.INSTALLED, "jcrinstall:/apps/install/fragment.jar", "bundle:fragment"));
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.INSTALLED, "jcrinstall:/apps/install/resolved.jar", "bundle:resolved"));
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.INSTALLED, "jcrinstall:/libs/install/other.jar", "bundle:other"));
+        final OsgiInstallerHealthCheck healthCheck = healthCheck(configuration, resourceGroups);
+        final BundleStateVerifier verifier = new BundleStateVerifier(mock(BundleContext.class));
+        FieldUtils.writeDeclaredField(healthCheck, "bundleStateVerifier", verifier, true);
+
+        final Bundle active = bundle("active", Bundle.ACTIVE, null);
+        final BundleStateVerifier.TrackedBundle trackedActive = verifier.addingBundle(active, null);
+        verifier.addingBundle(bundle("fragment", Bundle.RESOLVED, "host"), null);
+        final Bundle resolved = bundle("resolved", Bundle.RESOLVED, null);
+        final BundleStateVerifier.TrackedBundle trackedResolved = verifier.addingBundle(resolved, null);
+
+        Result result = healthCheck.execute();
+        assertThat(result.getStatus(), equalTo(Result.Status.CRITICAL));
+        // neither the fragment nor the bundle outside of the URL prefixes is reported
+        assertThat(result.toString().split("is installed according to the OSGi installer").length - 1, equalTo(1));
+        assertThat(result.toString(), containsString("is installed according to the OSGi installer, but the bundle is only resolved (not started) in the framework!"));
+        // neither the installer state nor a bundle changed, the verification is not repeated
+        assertThat(healthCheck.execute(), sameInstance(result));
+        // the verification uses the installer state the result has been calculated from
+        final InfoProvider infoProvider = (InfoProvider) FieldUtils.readDeclaredField(healthCheck, "infoProvider", true);
+        verify(infoProvider, times(2)).getInstallationState();
+
+        // the state is read from the bundle, the verification is repeated on every bundle event
+        when(resolved.getState()).thenReturn(Bundle.ACTIVE);
+        verifier.modifiedBundle(resolved, null, trackedResolved);
+        assertThat(healthCheck.execute().getStatus(), equalTo(Result.Status.OK));
+
+        verifier.removedBundle(active, null, trackedActive);
+        result = healthCheck.execute();
+        assertThat(result.getStatus(), equalTo(Result.Status.CRITICAL));
+        assertThat(result.toString(), containsString("is installed according to the OSGi installer, but the bundle is not installed (probably uninstalled manually) in the framework!"));
+    }
+
+    @Test
+    public void testVerifyBundleStatesConsidersStartLevels() throws IllegalAccessException {
+        final OsgiInstallerHealthCheckConfiguration configuration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(configuration.urlPrefixes()).thenReturn(new String[]{"jcrinstall:/apps/"});
+        when(configuration.checkBundles()).thenReturn(true);
+        when(configuration.verifyBundleStates()).thenReturn(true);
+
+        final List<ResourceGroup> resourceGroups = new ArrayList<>();
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.INSTALLED, "jcrinstall:/apps/install/late.jar", "bundle:late"));
+        final OsgiInstallerHealthCheck healthCheck = healthCheck(configuration, resourceGroups);
+        final FrameworkStartLevel frameworkStartLevel = mock(FrameworkStartLevel.class);
+        when(frameworkStartLevel.getStartLevel()).thenReturn(20);
+        final Bundle systemBundle = mock(Bundle.class);
+        when(systemBundle.adapt(FrameworkStartLevel.class)).thenReturn(frameworkStartLevel);
+        final BundleContext bundleContext = mock(BundleContext.class);
+        when(bundleContext.getBundle(Constants.SYSTEM_BUNDLE_LOCATION)).thenReturn(systemBundle);
+        final BundleStateVerifier verifier = new BundleStateVerifier(bundleContext);
+        FieldUtils.writeDeclaredField(healthCheck, "bundleStateVerifier", verifier, true);
+        final Bundle late = bundle("late", Bundle.INSTALLED, null);
+        when(late.adapt(BundleStartLevel.class).getStartLevel()).thenReturn(30);
+        verifier.addingBundle(late, null);
+
+        // the start level of the bundle has not been reached yet
+        assertThat(healthCheck.execute().getStatus(), equalTo(Result.Status.OK));
+
+        // the bundle is expected to be active once the start level has been reached, even without a bundle event
+        when(frameworkStartLevel.getStartLevel()).thenReturn(30);
+        final Result result = healthCheck.execute();
+        assertThat(result.getStatus(), equalTo(Result.Status.CRITICAL));
+        assertThat(result.toString(), containsString("but the bundle is only installed (not resolved) in the framework!"));
+    }
+
+    @Test
+    public void testVerifyBundleStatesIgnoresBundlesWhichAreNotPersistentlyStarted() throws IllegalAccessException {
+        final OsgiInstallerHealthCheckConfiguration configuration = mock(OsgiInstallerHealthCheckConfiguration.class);
+        when(configuration.urlPrefixes()).thenReturn(new String[]{"jcrinstall:/apps/"});
+        when(configuration.checkBundles()).thenReturn(true);
+        when(configuration.verifyBundleStates()).thenReturn(true);
+
+        final List<ResourceGroup> resourceGroups = new ArrayList<>();
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.INSTALLED, "jcrinstall:/apps/install/stopped.jar", "bundle:stopped"));
+        resourceGroups.add(resourceGroup(InstallableResource.TYPE_BUNDLE, ResourceState.INSTALLED, "jcrinstall:/apps/install/unresolved.jar", "bundle:unresolved"));
+        final OsgiInstallerHealthCheck healthCheck = healthCheck(configuration, resourceGroups);
+        final BundleStateVerifier verifier = new BundleStateVerifier(mock(BundleContext.class));
+        FieldUtils.writeDeclaredField(healthCheck, "bundleStateVerifier", verifier, true);
+        final Bundle stopped = bundle("stopped", Bundle.RESOLVED, null);
+        when(stopped.adapt(BundleStartLevel.class).isPersistentlyStarted()).thenReturn(false);
+        verifier.addingBundle(stopped, null);
+        final Bundle unresolved = bundle("unresolved", Bundle.INSTALLED, null);
+        when(unresolved.adapt(BundleStartLevel.class).isPersistentlyStarted()).thenReturn(false);
+        verifier.addingBundle(unresolved, null);
+
+        // a bundle which could not be resolved is still reported
+        final Result result = healthCheck.execute();
+        assertThat(result.getStatus(), equalTo(Result.Status.CRITICAL));
+        assertThat(result.toString().split("is installed according to the OSGi installer").length - 1, equalTo(1));
+        assertThat(result.toString(), containsString("but the bundle is only installed (not resolved) in the framework!"));
+    }
+
+    private static Bundle bundle(final String symbolicName, final int state, final String fragmentHost) {
+        final Bundle bundle = mock(Bundle.class);
+        when(bundle.getSymbolicName()).thenReturn(symbolicName);
+        when(bundle.getVersion()).thenReturn(Version.emptyVersion);
+        when(bundle.getState()).thenReturn(state);
+        final Hashtable<String, String> headers = new Hashtable<>();
+        if (fragmentHost != null) {
+            headers.put(Constants.FRAGMENT_HOST, fragmentHost);
+        }
+        when(bundle.getHeaders("")).thenReturn(headers);
+        final BundleStartLevel startLevel = mock(BundleStartLevel.class);
+        when(startLevel.getStartLevel()).thenReturn(1);
+        when(startLevel.isPersistentlyStarted()).thenReturn(true);
+        when(bundle.adapt(BundleStartLevel.class)).thenReturn(startLevel);
+        return bundle;
+    }
 }
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.fail;
+
+public class SingleFlightTest {
+
+    @Test
+    public void testJoinerRetriesAfterLeaderHasBeenInterrupted() throws Exception {
+        final CountDownLatch joined = new CountDownLatch(1);
+        final SingleFlight<String> singleFlight = new SingleFlight<>(joined::countDown);
+        final AtomicInteger numComputations = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<String> leader = executor.submit(() -> singleFlight.run(() -> {
+                numComputations.incrementAndGet();
+                try {
+                    joined.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new CancellationException("Leader has been interrupted");
+            }));
+            final Future<String> joiner = executor.submit(() -> {
+                // only starts once the leader is running, as it has to join it
+                while (numComputations.get() == 0) {
+                    Thread.yield();
+                }
+                return singleFlight.run(() -> {
+                    numComputations.incrementAndGet();
+                    return "result";
+                });
+            });
+            assertThat(joiner.get(10, TimeUnit.SECONDS), equalTo("result"));
+            assertThat(numComputations.get(), equalTo(2));
+            try {
+                leader.get(10, TimeUnit.SECONDS);
+                fail("The interrupted caller must not receive a result");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause(), instanceOf(CancellationException.class));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
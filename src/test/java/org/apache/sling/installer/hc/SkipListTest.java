@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import org.junit.Test;
+import org.osgi.framework.Version;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class SkipListTest {
+
+    @Test
+    public void testExactVersionsAndRanges() {
+        final SkipList skipList = SkipList.parse(new String[] { "bundle:foo [1.0,2.0)", "bundle:foo 2.5.0", "bundle:foo (3.0,4.0]", "bundle:bar" });
+        assertThat(skipList.size(), equalTo(2));
+        assertThat(skipList.isSkipped("bundle:foo", new Version("0.9.0")), equalTo(false));
+        assertThat(skipList.isSkipped("bundle:foo", new Version("1.0.0")), equalTo(true));
+        assertThat(skipList.isSkipped("bundle:foo", new Version("1.9.9")), equalTo(true));
+        assertThat(skipList.isSkipped("bundle:foo", new Version("2.0.0")), equalTo(false));
+        assertThat(skipList.isSkipped("bundle:foo", new Version("2.5.0")), equalTo(true));
+        assertThat(skipList.isSkipped("bundle:foo", new Version("2.5.1")), equalTo(false));
+        assertThat(skipList.isSkipped("bundle:foo", new Version("3.0.0")), equalTo(false));
+        assertThat(skipList.isSkipped("bundle:foo", new Version("4.0.0")), equalTo(true));
+        assertThat(skipList.isSkipped("bundle:foo", new Version("4.0.1")), equalTo(false));
+        assertThat(skipList.isSkipped("bundle:foo", null), equalTo(false));
+        assertThat(skipList.isAnyVersionSkipped("bundle:foo"), equalTo(false));
+        assertThat(skipList.isSkipped("bundle:bar", new Version("47.11.0")), equalTo(true));
+        assertThat(skipList.isSkipped("bundle:bar", null), equalTo(true));
+        assertThat(skipList.isAnyVersionSkipped("bundle:bar"), equalTo(true));
+        assertThat(skipList.isSkipped("bundle:baz", new Version("1.0.0")), equalTo(false));
+    }
+
+    @Test
+    public void testAdjacentRanges() {
+        final SkipList skipList = SkipList.parse(new String[] { "bundle:foo [2.0,3.0]", "bundle:foo [1.0,2.0)", "bundle:foo (3.0,4.0)"});
+        assertThat(skipList.isSkipped("bundle:foo", new Version("2.0.0")), equalTo(true));
+        assertThat(skipList.isSkipped("bundle:foo", new Version("3.0.0")), equalTo(true));
+        assertThat(skipList.isSkipped("bundle:foo", new Version("3.0.1")), equalTo(true));
+        assertThat(skipList.isSkipped("bundle:foo", new Version("4.0.0")), equalTo(false));
+    }
+
+    @Test
+    public void testRangeFollowedByExactVersionAtExclusiveEnd() {
+        final SkipList skipList = SkipList.parse(new String[] { "bundle:foo 2.0.0", "bundle:foo [1.0,2.0)", "bundle:foo (2.0,2.1)" });
+        assertThat(skipList.isSkipped("bundle:foo", new Version("1.0.0")), equalTo(true));
+        assertThat(skipList.isSkipped("bundle:foo", new Version("2.0.0")), equalTo(true));
+        assertThat(skipList.isSkipped("bundle:foo", new Version("2.0.1")), equalTo(true));
+        assertThat(skipList.isSkipped("bundle:foo", new Version("2.1.0")), equalTo(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOverlappingRanges() {
+        SkipList.parse(new String[] { "bundle:foo [1.0,2.0]", "bundle:foo [2.0,3.0)" });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testVersionWithinRange() {
+        SkipList.parse(new String[] { "bundle:foo [1.0,2.0)", "bundle:foo 1.5.0" });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateVersion() {
+        SkipList.parse(new String[] { "bundle:foo 1.5.0", "bundle:foo 1.5.0" });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testVersionAfterAnyVersion() {
+        SkipList.parse(new String[] { "bundle:foo", "bundle:foo 1.5.0" });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAnyVersionAfterVersion() {
+        SkipList.parse(new String[] { "bundle:foo 1.5.0", "bundle:foo" });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyRange() {
+        SkipList.parse(new String[] { "bundle:foo [2.0,1.0]" });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidVersion() {
+        SkipList.parse(new String[] { "bundle:foo 1.a" });
+    }
+}
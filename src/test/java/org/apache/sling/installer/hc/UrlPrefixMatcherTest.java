@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.installer.hc;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class UrlPrefixMatcherTest {
+
+    @Test
+    public void testMatches() {
+        final UrlPrefixMatcher matcher = UrlPrefixMatcher.compile(new String[]{"jcrinstall:/apps/", "jcrinstall:/libs/", "launchpad:", "jcrinstall:/apps/tenant/"});
+        assertThat(matcher.matches("jcrinstall:/apps/install/foo.jar"), equalTo(true));
+        assertThat(matcher.matches("jcrinstall:/apps/tenant/install/foo.jar"), equalTo(true));
+        assertThat(matcher.matches("jcrinstall:/libs/config/foo.cfg"), equalTo(true));
+        assertThat(matcher.matches("launchpad:resources/install/0/foo.jar"), equalTo(true));
+        assertThat(matcher.matches("jcrinstall:/apps/"), equalTo(true));
+        assertThat(matcher.matches("jcrinstall:/apps"), equalTo(false));
+        assertThat(matcher.matches("jcrinstall:/content/foo.jar"), equalTo(false));
+        assertThat(matcher.matches("launch"), equalTo(false));
+        assertThat(matcher.matches(""), equalTo(false));
+    }
+
+    @Test
+    public void testNoPrefixes() {
+        assertThat(UrlPrefixMatcher.compile(new String[]{}).matches("jcrinstall:/apps/install/foo.jar"), equalTo(false));
+        assertThat(UrlPrefixMatcher.compile(null).matches("jcrinstall:/apps/install/foo.jar"), equalTo(false));
+    }
+
+    @Test
+    public void testEmptyPrefixMatchesEverything() {
+        final UrlPrefixMatcher matcher = UrlPrefixMatcher.compile(new String[]{"jcrinstall:/apps/", ""});
+        assertThat(matcher.matches("launchpad:resources/install/0/foo.jar"), equalTo(true));
+        assertThat(matcher.matches(""), equalTo(true));
+    }
+
+    @Test
+    public void testToString() {
+        assertThat(UrlPrefixMatcher.compile(new String[]{"jcrinstall:/apps/", "launchpad:"}).toString(), equalTo("[jcrinstall:/apps/, launchpad:]"));
+    }
+
+    @Test
+    public void testCombine() {
+        final UrlPrefixMatcher matcher = UrlPrefixMatcher.combine(new UrlPrefixMatcher[]{
+            UrlPrefixMatcher.compile(new String[]{"jcrinstall:/apps/"}),
+            UrlPrefixMatcher.compile(new String[]{"jcrinstall:/libs/", "launchpad:"}),
+            UrlPrefixMatcher.compile(new String[]{}),
+            UrlPrefixMatcher.compile(new String[]{"jcrinstall:/"})
+        });
+        assertThat(matcher.match("jcrinstall:/apps/install/foo.jar"), equalTo(0b1001L));
+        assertThat(matcher.match("jcrinstall:/libs/install/foo.jar"), equalTo(0b1010L));
+        assertThat(matcher.match("launchpad:resources/install/0/foo.jar"), equalTo(0b0010L));
+        assertThat(matcher.match("jcrinstall:/content/foo.jar"), equalTo(0b1000L));
+        assertThat(matcher.match("file:/foo.jar"), equalTo(0L));
+        assertThat(matcher.matches("file:/foo.jar"), equalTo(false));
+        assertThat(matcher.toString(), equalTo("[jcrinstall:/apps/, jcrinstall:/libs/, launchpad:, jcrinstall:/]"));
+    }
+
+    @Test
+    public void testGetMatchingPrefix() {
+        final UrlPrefixMatcher matcher = UrlPrefixMatcher.compile(new String[]{"jcrinstall:/apps/", "jcrinstall:/apps/install/", "launchpad:"});
+        assertThat(matcher.getMatchingPrefix("jcrinstall:/apps/install/foo.jar"), equalTo("jcrinstall:/apps/install/"));
+        assertThat(matcher.getMatchingPrefix("jcrinstall:/apps/config/foo.cfg"), equalTo("jcrinstall:/apps/"));
+        assertThat(matcher.getMatchingPrefix("jcrinstall:/libs/install/foo.jar"), equalTo(null));
+        assertThat(matcher.getMatchingPrefix(null), equalTo(null));
+    }
+}
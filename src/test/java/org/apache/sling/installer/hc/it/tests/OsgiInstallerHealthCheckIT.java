@@ -19,6 +19,7 @@ package org.apache.sling.installer.hc.it.tests;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.time.Duration;
 import java.util.Dictionary;
 import java.util.Hashtable;
 import java.util.Objects;
@@ -28,6 +29,7 @@ import javax.inject.Inject;
 
 import org.apache.felix.hc.api.HealthCheck;
 import org.apache.felix.hc.api.Result;
+import org.apache.sling.installer.hc.api.InstallerConvergence;
 import org.apache.sling.installer.hc.it.InstallerHealthCheckTestSupport;
 import org.apache.sling.installer.hc.it.app.Foo;
 import org.junit.Test;
@@ -65,6 +67,10 @@ public class OsgiInstallerHealthCheckIT extends InstallerHealthCheckTestSupport
     @Filter(value = "(hc.name=OSGi Installer Health Check)")
     private HealthCheck healthCheck;
 
+    @Inject
+    @Filter(value = "(hc.name=OSGi Installer Health Check)")
+    private InstallerConvergence installerConvergence;
+
     private static final String PID = "org.apache.sling.installer.hc.OsgiInstallerHealthCheck";
 
     private static final String BAR_PID = "org.apache.sling.installer.hc.it.app.Bar";
@@ -146,7 +152,7 @@ public class OsgiInstallerHealthCheckIT extends InstallerHealthCheckTestSupport
             until(() -> hasConfiguration(FOO_PID));
 
         {
-            final Result result = healthCheck.execute();
+            final Result result = installerConvergence.awaitConverged(Duration.ofSeconds(10));
             assertThat(result.isOk(), equalTo(true));
             assertThat(result.getStatus(), equalTo(Result.Status.OK));
         }